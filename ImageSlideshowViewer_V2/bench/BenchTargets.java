@@ -0,0 +1,66 @@
+import benchmarks.Targets;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.GraphicsConfiguration;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.function.UnaryOperator;
+
+/**
+ * Gives the benchmarks in package benchmarks access to the viewer's package-private
+ * classes. Each method forwards to the production code path it is named after.
+ */
+public class BenchTargets implements Targets {
+    @Override
+    public int subsamplingFor(double scale) {
+        return ImageDecoder.subsamplingFor(scale);
+    }
+
+    @Override
+    public int tileSize() {
+        return TiledImage.TILE_SIZE;
+    }
+
+    @Override
+    public BufferedImage decode(File file, int subsampling) throws IOException {
+        return ImageDecoder.decode(file, subsampling);
+    }
+
+    @Override
+    public BufferedImage decodeRegion(File file, Rectangle region, int subsampling) throws IOException {
+        return ImageDecoder.decodeRegion(file, region, subsampling);
+    }
+
+    @Override
+    public UnaryOperator<BufferedImage> edit(String name, int width, int height) {
+        ImageEdits edits = new ImageEdits();
+        switch (name) {
+            case "rotate":
+                edits.rotate();
+                break;
+            case "flip":
+                edits.flip(true, false);
+                break;
+            case "crop+rotate":
+                edits.crop(new Rectangle(width / 4, height / 4, width / 2, height / 2));
+                edits.rotate();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown edit: " + name);
+        }
+        return raster -> edits.render(raster, 1, width, height);
+    }
+
+    @Override
+    public SlidePaint slidePaint(GraphicsConfiguration gc, Dimension view, boolean direct) {
+        SlidePainter painter = new SlidePainter();
+        ImageEdits edits = new ImageEdits();
+        Point offset = new Point(0, 0);
+        return (g, raster, zoom) -> painter.paint(g, gc, view, Color.BLACK, raster, 1,
+                raster.getWidth(), raster.getHeight(), edits, zoom, offset, direct);
+    }
+}
@@ -0,0 +1,78 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full ImageIO.read against the viewer's decode of the same file subsampled to fit a
+ * 1920x1080 screen, and against a single tile-sized region at full resolution.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DecodeBenchmark {
+    private static final int VIEW_W = 1920, VIEW_H = 1080;
+
+    @Param({"1024x768", "4000x3000", "6000x4000"})
+    public String size;
+
+    @Param({"jpg", "png"})
+    public String format;
+
+    private final Targets targets = Targets.load();
+    private File file;
+    private int fit;
+    private Rectangle tile;
+
+    @Setup
+    public void writeImage() throws IOException {
+        int[] wh = Synthetic.size(size);
+        file = Files.createTempFile("slideshow-bench", "." + format).toFile();
+        ImageIO.write(Synthetic.image(wh[0], wh[1], BufferedImage.TYPE_INT_RGB), format, file);
+
+        fit = targets.subsamplingFor(Math.min(1.0, Math.min((double) VIEW_W / wh[0], (double) VIEW_H / wh[1])));
+        tile = new Rectangle(wh[0] / 2, wh[1] / 2, targets.tileSize(), targets.tileSize())
+                .intersection(new Rectangle(wh[0], wh[1]));
+    }
+
+    @TearDown
+    public void deleteImage() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Benchmark
+    public BufferedImage imageIORead() throws IOException {
+        return ImageIO.read(file);
+    }
+
+    @Benchmark
+    public BufferedImage subsampledToScreen() throws IOException {
+        return targets.decode(file, fit);
+    }
+
+    @Benchmark
+    public BufferedImage region() throws IOException {
+        return targets.decodeRegion(file, tile, 1);
+    }
+}
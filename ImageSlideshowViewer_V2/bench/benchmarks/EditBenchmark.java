@@ -0,0 +1,53 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * ImageEdits.render, which replaced the deepCopy, rotateImageTransform and
+ * flipImageTransform copies, materializing one edit of a full-resolution raster.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class EditBenchmark {
+    @Param({"1024x768", "4000x3000", "6000x4000"})
+    public String size;
+
+    @Param({"INT_RGB", "INT_ARGB", "3BYTE_BGR", "BYTE_GRAY"})
+    public String type;
+
+    @Param({"rotate", "flip", "crop+rotate"})
+    public String edit;
+
+    private BufferedImage raster;
+    private UnaryOperator<BufferedImage> render;
+
+    @Setup
+    public void prepare() {
+        int[] wh = Synthetic.size(size);
+        raster = Synthetic.image(wh[0], wh[1], Synthetic.type(type));
+        render = Targets.load().edit(edit, wh[0], wh[1]);
+    }
+
+    @Benchmark
+    public BufferedImage render() {
+        return render.apply(raster);
+    }
+}
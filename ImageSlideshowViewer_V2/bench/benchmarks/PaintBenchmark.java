@@ -0,0 +1,75 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A headless ImagePanel repaint: SlidePainter drawing a slide into a 1920x1080 buffer,
+ * either straight from the raster through the zoom transform (as tiled slides do) or
+ * as a blit from its RenderCache surface once that is warm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+    private static final Dimension VIEW = new Dimension(1920, 1080);
+
+    @Param({"1024x768", "4000x3000"})
+    public String size;
+
+    @Param({"INT_RGB", "INT_ARGB", "3BYTE_BGR", "BYTE_GRAY"})
+    public String type;
+
+    @Param({"0.25", "0.5", "1.0", "2.0"})
+    public double zoom;
+
+    @Param({"direct", "cached"})
+    public String path;
+
+    private BufferedImage raster;
+    private BufferedImage screen;
+    private Graphics2D g;
+    private Targets.SlidePaint painter;
+
+    @Setup
+    public void prepare() {
+        int[] wh = Synthetic.size(size);
+        raster = Synthetic.image(wh[0], wh[1], Synthetic.type(type));
+        screen = new BufferedImage(VIEW.width, VIEW.height, BufferedImage.TYPE_INT_RGB);
+        g = screen.createGraphics();
+        g.setBackground(Color.BLACK);
+        painter = Targets.load().slidePaint(g.getDeviceConfiguration(), VIEW, path.equals("direct"));
+    }
+
+    @TearDown
+    public void dispose() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paint() {
+        Graphics2D frame = (Graphics2D) g.create();
+        painter.paint(frame, raster, zoom);
+        frame.dispose();
+        return screen;
+    }
+}
@@ -0,0 +1,44 @@
+package benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/** Benchmark inputs: photo-like images of the sizes and types named in @Param values. */
+final class Synthetic {
+    private Synthetic() {
+    }
+
+    // "4000x3000" -> {4000, 3000}
+    static int[] size(String spec) {
+        int x = spec.indexOf('x');
+        return new int[]{Integer.parseInt(spec.substring(0, x)), Integer.parseInt(spec.substring(x + 1))};
+    }
+
+    static int type(String name) {
+        switch (name) {
+            case "INT_RGB": return BufferedImage.TYPE_INT_RGB;
+            case "INT_ARGB": return BufferedImage.TYPE_INT_ARGB;
+            case "3BYTE_BGR": return BufferedImage.TYPE_3BYTE_BGR;
+            case "BYTE_GRAY": return BufferedImage.TYPE_BYTE_GRAY;
+            default: throw new IllegalArgumentException("Unknown image type: " + name);
+        }
+    }
+
+    // Smooth gradients with noise, so codecs see something closer to a photo than a flat fill
+    static BufferedImage image(int w, int h, int type) {
+        BufferedImage img = new BufferedImage(w, h, type);
+        Random random = new Random(42);
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int r = (x * 255 / w + random.nextInt(16)) & 0xFF;
+                int g = (y * 255 / h + random.nextInt(16)) & 0xFF;
+                int b = ((x + y) * 127 / (w + h) + random.nextInt(16)) & 0xFF;
+                int a = type == BufferedImage.TYPE_INT_ARGB ? 128 + (x * 127 / w) : 255;
+                row[x] = a << 24 | r << 16 | g << 8 | b;
+            }
+            img.setRGB(0, y, w, 1, row, 0, w);
+        }
+        return img;
+    }
+}
@@ -0,0 +1,46 @@
+package benchmarks;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.function.UnaryOperator;
+
+/**
+ * The viewer code the benchmarks call. The viewer lives in the default package, which
+ * JMH refuses for benchmark classes and which a named package cannot import, so the
+ * calls go through this interface to BenchTargets, a default-package class in bench/.
+ */
+public interface Targets {
+    static Targets load() {
+        try {
+            return (Targets) Class.forName("BenchTargets").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchTargets is missing from the classpath", e);
+        }
+    }
+
+    // ImageDecoder.subsamplingFor
+    int subsamplingFor(double scale);
+
+    // TiledImage.TILE_SIZE
+    int tileSize();
+
+    BufferedImage decode(File file, int subsampling) throws IOException;
+
+    BufferedImage decodeRegion(File file, Rectangle region, int subsampling) throws IOException;
+
+    // ImageEdits.render for one edit ("rotate", "flip" or "crop+rotate") of a raster of that size
+    UnaryOperator<BufferedImage> edit(String name, int width, int height);
+
+    /** One ImagePanel repaint through SlidePainter, with its own RenderCache. */
+    interface SlidePaint {
+        void paint(Graphics2D g, BufferedImage raster, double zoom);
+    }
+
+    // A painter for a view of the given size; direct skips the RenderCache as tiled slides do
+    SlidePaint slidePaint(GraphicsConfiguration gc, Dimension view, boolean direct);
+}
@@ -0,0 +1,330 @@
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Headless export: applies the viewer's rotate, flip and crop edits to every image
+ * in a folder tree and re-encodes the results into a mirrored tree. Runs one task per
+ * core; a pixel-memory budget keeps large images from being decoded all at once.
+ *
+ * Usage: --export <input dir> <output dir> [--rotate 90|180|270] [--flip h|v|hv]
+ *        [--crop x,y,w,h] (pixels, or percent with a % suffix) [--max-size px]
+ *        [--format jpg|png|bmp|gif] [--quality 0.0-1.0] [--threads n] [--memory MB]
+ */
+final class BatchExport {
+    private final Path input, output;
+    private int rotation = 0;
+    private boolean flipH = false, flipV = false;
+    private String[] crop; // x, y, w, h as given on the command line
+    private int maxSize = 0; // Longest output side, 0 for no limit
+    private String format = "jpg";
+    private float quality = 0.9f;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long memoryBytes = Runtime.getRuntime().maxMemory() / 2;
+
+    private Semaphore memory;
+    private int maxPermits; // An image larger than the whole budget runs alone
+    private final AtomicInteger exported = new AtomicInteger(), failed = new AtomicInteger();
+    private final AtomicLong bytesRead = new AtomicLong(), bytesWritten = new AtomicLong();
+
+    private BatchExport(Path input, Path output) {
+        this.input = input;
+        this.output = output;
+    }
+
+    // Entry point for --export; returns the process exit code
+    static int run(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        BatchExport export;
+        try {
+            export = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: --export <input dir> <output dir> [--rotate 90|180|270] [--flip h|v|hv]\n"
+                    + "       [--crop x,y,w,h | x%,y%,w%,h%] [--max-size px] [--format jpg|png|bmp|gif]\n"
+                    + "       [--quality 0.0-1.0] [--threads n] [--memory MB]");
+            return 2;
+        }
+
+        try {
+            return export.exportAll();
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Export failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private static BatchExport parse(String[] args) {
+        if (args.length < 2) throw new IllegalArgumentException("Input and output folders are required");
+        BatchExport export = new BatchExport(Path.of(args[0]), Path.of(args[1]));
+        if (!Files.isDirectory(export.input)) {
+            throw new IllegalArgumentException("Not a folder: " + args[0]);
+        }
+
+        for (int i = 2; i < args.length; i += 2) {
+            if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + args[i]);
+            String value = args[i + 1];
+            try {
+                switch (args[i]) {
+                    case "--rotate":
+                        export.rotation = Integer.parseInt(value);
+                        if (export.rotation % 90 != 0) throw new IllegalArgumentException("Rotation must be a multiple of 90");
+                        export.rotation = Math.floorMod(export.rotation, 360);
+                        break;
+                    case "--flip":
+                        if (!value.matches("h|v|hv|vh")) throw new IllegalArgumentException("Flip must be h, v or hv");
+                        export.flipH = value.contains("h");
+                        export.flipV = value.contains("v");
+                        break;
+                    case "--crop":
+                        export.crop = parseCrop(value);
+                        break;
+                    case "--max-size": export.maxSize = Integer.parseInt(value); break;
+                    case "--format":
+                        export.format = value.toLowerCase();
+                        if (export.format.equals("jpeg")) export.format = "jpg"; // Quality applies to both spellings
+                        break;
+                    case "--quality":
+                        export.quality = Float.parseFloat(value);
+                        if (!(export.quality >= 0 && export.quality <= 1)) {
+                            throw new IllegalArgumentException("Quality must be between 0.0 and 1.0");
+                        }
+                        break;
+                    case "--threads": export.threads = Math.max(1, Integer.parseInt(value)); break;
+                    case "--memory": export.memoryBytes = Long.parseLong(value) << 20; break;
+                    default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad value for " + args[i] + ": " + value);
+            }
+        }
+        if (!ImageIO.getImageWritersByFormatName(export.format).hasNext()) {
+            throw new IllegalArgumentException("No encoder for format: " + export.format);
+        }
+        return export;
+    }
+
+    // Checks x,y,w,h, each in pixels or a percentage: the origin must lie inside the image
+    // when given in percent, and the size must not be empty
+    private static String[] parseCrop(String value) {
+        String[] crop = value.split(",");
+        if (crop.length != 4) throw new IllegalArgumentException("Crop needs x,y,w,h");
+        for (int i = 0; i < 4; i++) {
+            crop[i] = crop[i].trim();
+            boolean percent = crop[i].endsWith("%");
+            double v = percent ? Double.parseDouble(crop[i].substring(0, crop[i].length() - 1))
+                    : Integer.parseInt(crop[i]);
+            boolean origin = i < 2;
+            if (v < 0 || (!origin && v == 0) || (percent && (origin ? v >= 100 : v > 100))) {
+                throw new IllegalArgumentException("Crop is empty or outside the image: " + value);
+            }
+        }
+        return crop;
+    }
+
+    private int exportAll() throws IOException, InterruptedException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(input)) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(p -> ImageSlideshowViewer.isImageFile(p.toFile()))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        Map<Path, Path> targets = targetsFor(files);
+
+        // Permits are KB of decoded pixels, so a budget of a few GB still fits in an int
+        maxPermits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, memoryBytes >> 10));
+        memory = new Semaphore(maxPermits);
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> tasks = new ArrayList<>(files.size());
+            for (Path file : files) {
+                tasks.add(pool.submit(() -> exportOne(file, targets.get(file))));
+            }
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    failed.incrementAndGet(); // Errors exportOne does not catch, such as OutOfMemoryError
+                    System.err.println("Export task failed: " + e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Exported %d of %d images (%d failed) in %.1f s: %.1f images/s, "
+                        + "%.1f MB/s read, %.1f MB/s written%n",
+                exported.get(), files.size(), failed.get(), seconds, exported.get() / seconds,
+                bytesRead.get() / seconds / (1024 * 1024), bytesWritten.get() / seconds / (1024 * 1024));
+        return failed.get() == 0 ? 0 : 1;
+    }
+
+    private void exportOne(Path file, Path target) {
+        int permits = 0;
+        try {
+            Dimension size = ImageDecoder.readSize(file.toFile());
+            if (size == null) throw new IOException("Unsupported image");
+
+            ImageEdits edits = editsFor(file, size.width, size.height);
+            Dimension out = edits.outputSize(size.width, size.height);
+            double scale = maxSize > 0 ? Math.min(1.0, (double) maxSize / Math.max(out.width, out.height)) : 1.0;
+            int subsampling = ImageDecoder.subsamplingFor(scale);
+
+            // Decoded raster plus the edited copy, at 4 bytes per pixel
+            long pixels = (long) (size.width / subsampling + 1) * (size.height / subsampling + 1);
+            int needed = (int) Math.min(maxPermits, Math.max(1, pixels * 8 >> 10));
+            memory.acquire(needed);
+            permits = needed;
+
+            BufferedImage raster = ImageDecoder.decode(file.toFile(), size, subsampling, null);
+            if (raster == null) throw new IOException("Unsupported image");
+            BufferedImage result = edits.render(raster, subsampling, size.width, size.height);
+            raster = null;
+            if (maxSize > 0 && Math.max(result.getWidth(), result.getHeight()) > maxSize) {
+                result = scaleToFit(result, maxSize);
+            }
+
+            Files.createDirectories(target.getParent());
+            write(result, target.toFile());
+            bytesRead.addAndGet(Files.size(file));
+            bytesWritten.addAndGet(Files.size(target));
+            exported.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            failed.incrementAndGet();
+            System.err.println("Failed to export " + input.relativize(file) + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            memory.release(permits);
+        }
+    }
+
+    private ImageEdits editsFor(Path file, int width, int height) throws IOException {
+        ImageEdits edits = new ImageEdits();
+        if (crop != null) {
+            Rectangle region = new Rectangle(cropValue(crop[0], width), cropValue(crop[1], height),
+                    cropValue(crop[2], width), cropValue(crop[3], height))
+                    .intersection(new Rectangle(width, height));
+            if (region.isEmpty()) {
+                throw new IOException("Crop lies outside the " + width + "x" + height + " image");
+            }
+            edits.crop(region);
+        }
+        for (int r = 0; r < rotation; r += 90) {
+            edits.rotate();
+        }
+        edits.flip(flipH, flipV);
+        return edits;
+    }
+
+    private static int cropValue(String value, int extent) {
+        value = value.trim();
+        if (value.endsWith("%")) {
+            return (int) Math.round(Double.parseDouble(value.substring(0, value.length() - 1)) * extent / 100.0);
+        }
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * Same relative path under the output folder, with the output format's extension.
+     * Files that would share a target, such as a.jpg and a.png, keep their whole name
+     * (a.jpg.png, a.png.png). Names are compared ignoring case, for Windows and macOS.
+     */
+    private Map<Path, Path> targetsFor(List<Path> files) throws IOException {
+        Map<String, List<Path>> byName = new HashMap<>();
+        for (Path file : files) {
+            byName.computeIfAbsent(targetName(file, false).toLowerCase(Locale.ROOT), k -> new ArrayList<>()).add(file);
+        }
+
+        Map<Path, Path> targets = new HashMap<>();
+        Map<String, Path> taken = new HashMap<>();
+        for (Path file : files) {
+            boolean clash = byName.get(targetName(file, false).toLowerCase(Locale.ROOT)).size() > 1;
+            String name = targetName(file, clash);
+            Path other = taken.put(name.toLowerCase(Locale.ROOT), file);
+            if (other != null) {
+                throw new IOException("Both " + input.relativize(other) + " and " + input.relativize(file)
+                        + " would be exported as " + name);
+            }
+            targets.put(file, output.resolve(name));
+        }
+        return targets;
+    }
+
+    private String targetName(Path file, boolean keepExtension) {
+        String relative = input.relativize(file).toString();
+        int dot = relative.lastIndexOf('.');
+        return (dot > 0 && !keepExtension ? relative.substring(0, dot) : relative) + "." + format;
+    }
+
+    private void write(BufferedImage image, File target) throws IOException {
+        // JPEG and BMP have no alpha channel
+        if (image.getColorModel().hasAlpha() && !format.equals("png") && !format.equals("gif")) {
+            BufferedImage opaque = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = opaque.createGraphics();
+            g.drawImage(image, 0, 0, Color.WHITE, null);
+            g.dispose();
+            image = opaque;
+        }
+
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        ImageWriter writer = writers.next();
+        Files.deleteIfExists(target.toPath());
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(target)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed() && format.equals("jpg")) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static BufferedImage scaleToFit(BufferedImage image, int maxSize) {
+        double scale = (double) maxSize / Math.max(image.getWidth(), image.getHeight());
+        int w = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int h = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage scaled = new BufferedImage(w, h, image.getColorModel().hasAlpha()
+                ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, w, h, null);
+        g.dispose();
+        return scaled;
+    }
+}
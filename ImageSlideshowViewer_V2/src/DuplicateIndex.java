@@ -0,0 +1,156 @@
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Perceptual hashes of the loaded images in a BK-tree, for finding near-duplicates
+ * (burst shots, re-encodes, resized copies) by Hamming distance. Nodes live in
+ * parallel primitive arrays with first-child/next-sibling links, so 100k images
+ * take a couple of megabytes and no per-node objects. A re-hashed or removed key
+ * leaves its old node behind as a tombstone; the tree is rebuilt once those
+ * outnumber the live ones.
+ */
+final class DuplicateIndex {
+    // dHash compares neighbours on a 9x8 grid of average luminance
+    private static final int GRID_W = 9, GRID_H = 8;
+
+    private long[] hashes = new long[1024];
+    private String[] keys = new String[1024];
+    private int[] firstChild = new int[1024];
+    private int[] nextSibling = new int[1024];
+    private byte[] edge = new byte[1024]; // Distance from the parent
+    private int nodes = 0;
+    private final Map<String, Integer> live = new HashMap<>(); // Key to its current node
+
+    /**
+     * 64-bit difference hash: the image is box-averaged to 9x8 luminance cells and each
+     * bit records whether a cell is brighter than its right-hand neighbour. Robust to
+     * scaling and recompression, so a tiny subsampled decode hashes like the original.
+     */
+    static long dHash(BufferedImage img) {
+        int w = img.getWidth(), h = img.getHeight();
+        long[] sums = new long[GRID_W * GRID_H];
+        int[] counts = new int[GRID_W * GRID_H];
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            img.getRGB(0, y, w, 1, row, 0, w);
+            int cellRow = y * GRID_H / h * GRID_W;
+            for (int x = 0; x < w; x++) {
+                int rgb = row[x];
+                int luma = (((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114) / 1000;
+                int cell = cellRow + x * GRID_W / w;
+                sums[cell] += luma;
+                counts[cell]++;
+            }
+        }
+
+        long hash = 0;
+        for (int y = 0; y < GRID_H; y++) {
+            for (int x = 0; x < GRID_W - 1; x++) {
+                int left = y * GRID_W + x;
+                // Compare averages without dividing: a/n > b/m  <=>  a*m > b*n
+                boolean brighter = sums[left] * counts[left + 1] > sums[left + 1] * counts[left];
+                hash = hash << 1 | (brighter ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    // Adds the key, replacing any earlier hash for it
+    synchronized void put(String key, long hash) {
+        Integer old = live.get(key);
+        if (old != null && hashes[old] == hash) return;
+        live.put(key, insert(key, hash));
+        rebuildIfStale();
+    }
+
+    synchronized void removeIf(Predicate<String> filter) {
+        if (live.keySet().removeIf(filter)) {
+            rebuildIfStale();
+        }
+    }
+
+    synchronized int size() {
+        return live.size();
+    }
+
+    // Keys whose hash is within maxDistance bits of the given one, in no particular order
+    synchronized List<String> near(long hash, int maxDistance) {
+        List<String> found = new ArrayList<>();
+        if (nodes == 0) return found;
+
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int d = distance(hash, hashes[node]);
+            if (d <= maxDistance && Integer.valueOf(node).equals(live.get(keys[node]))) {
+                found.add(keys[node]);
+            }
+            // Triangle inequality: only subtrees at edge distance d ± maxDistance can match
+            for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+                if (Math.abs(edge[child] - d) <= maxDistance) {
+                    if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+                    stack[top++] = child;
+                }
+            }
+        }
+        return found;
+    }
+
+    private int insert(String key, long hash) {
+        if (nodes == hashes.length) grow();
+        int node = nodes++;
+        hashes[node] = hash;
+        keys[node] = key;
+        firstChild[node] = -1;
+        nextSibling[node] = -1;
+        if (node == 0) return node;
+
+        int parent = 0;
+        while (true) {
+            int d = distance(hash, hashes[parent]);
+            int child = firstChild[parent];
+            while (child >= 0 && edge[child] != d) {
+                child = nextSibling[child];
+            }
+            if (child < 0) {
+                edge[node] = (byte) d;
+                nextSibling[node] = firstChild[parent];
+                firstChild[parent] = node;
+                return node;
+            }
+            parent = child;
+        }
+    }
+
+    private void grow() {
+        int capacity = hashes.length * 2;
+        hashes = Arrays.copyOf(hashes, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        nextSibling = Arrays.copyOf(nextSibling, capacity);
+        edge = Arrays.copyOf(edge, capacity);
+    }
+
+    private void rebuildIfStale() {
+        if (nodes - live.size() <= Math.max(1024, live.size())) return;
+
+        long[] oldHashes = Arrays.copyOf(hashes, nodes);
+        Map<String, Integer> entries = new HashMap<>(live);
+        nodes = 0;
+        live.clear();
+        for (Map.Entry<String, Integer> e : entries.entrySet()) {
+            live.put(e.getKey(), insert(e.getKey(), oldHashes[e.getValue()]));
+        }
+    }
+}
@@ -0,0 +1,323 @@
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+/**
+ * Reads the few EXIF tags the viewer shows (Make, Model, DateTime) straight from
+ * the file header, without building an IIOMetadata DOM. Handles the APP1 segment
+ * of JPEG files, the eXIf chunk of PNG files and TIFF files, whose header is
+ * itself an EXIF structure. Reads go through MappedFiles, so the header bytes come
+ * from the same mapping the decoder uses.
+ */
+final class ExifReader {
+    private static final int TAG_MAKE = 0x010F;
+    private static final int TAG_MODEL = 0x0110;
+    private static final int TAG_DATE_TIME = 0x0132;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+
+    private static final int MAX_SEGMENT = 64 * 1024;
+    private static final int MAX_STRING = 4096; // Longest make, model or date string read from a TIFF
+
+    /** The tags of one file; fields are null when absent. */
+    static final class Tags {
+        static final Tags EMPTY = new Tags(null, null, null);
+
+        final String make, model, dateTime;
+
+        Tags(String make, String model, String dateTime) {
+            this.make = make;
+            this.model = model;
+            this.dateTime = dateTime;
+        }
+
+        boolean isEmpty() {
+            return make == null && model == null && dateTime == null;
+        }
+
+        // Capture time in epoch millis (local time zone), or -1 when unknown
+        long captureTime() {
+            if (dateTime == null) return -1;
+            try {
+                return new SimpleDateFormat("yyyy:MM:dd HH:mm:ss").parse(dateTime).getTime();
+            } catch (ParseException e) {
+                return -1;
+            }
+        }
+
+        String toHtml() {
+            if (isEmpty()) return "No EXIF data available";
+            StringBuilder sb = new StringBuilder();
+            if (dateTime != null) sb.append("DateTime: ").append(dateTime).append("<br>");
+            if (make != null) sb.append("Make: ").append(make).append("<br>");
+            if (model != null) sb.append("Model: ").append(model).append("<br>");
+            return sb.toString();
+        }
+
+        // Compact form for the thumbnail store
+        String encode() {
+            return field(make) + "\t" + field(model) + "\t" + field(dateTime);
+        }
+
+        static Tags decode(String encoded) {
+            String[] parts = encoded.split("\t", -1);
+            if (parts.length != 3) return EMPTY;
+            return new Tags(unfield(parts[0]), unfield(parts[1]), unfield(parts[2]));
+        }
+
+        private static String field(String value) {
+            return value == null ? "" : value.replace('\t', ' ');
+        }
+
+        private static String unfield(String value) {
+            return value.isEmpty() ? null : value;
+        }
+    }
+
+    private ExifReader() {
+    }
+
+    static Tags read(Path path) {
+        try (ImageInputStream in = MappedFiles.open(path.toFile())) {
+            if (in == null) return Tags.EMPTY;
+            ByteBuffer head = readAt(in, 0, 8);
+            if (head.remaining() < 8) return Tags.EMPTY;
+
+            int b0 = head.get(0) & 0xFF, b1 = head.get(1) & 0xFF;
+            if (b0 == 0xFF && b1 == 0xD8) {
+                ByteBuffer tiff = jpegExif(in);
+                return tiff == null ? Tags.EMPTY : parseTiff(tiff);
+            } else if (b0 == 0x89 && b1 == 'P') {
+                return readPng(in);
+            } else if ((b0 == 'I' && b1 == 'I') || (b0 == 'M' && b1 == 'M')) {
+                return readTiff(in, b0 == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+            }
+        } catch (IOException | RuntimeException | InternalError e) {
+            // Unreadable or malformed header, or truncated under its mapping - treat as no EXIF
+        }
+        return Tags.EMPTY;
+    }
+
+    /**
+     * The embedded EXIF thumbnail of a JPEG file (itself a small JPEG), or null.
+     * Cameras store one of about 160 × 120 pixels in IFD1 of the APP1 segment.
+     */
+    static byte[] readThumbnail(Path path) {
+        try (ImageInputStream in = MappedFiles.open(path.toFile())) {
+            if (in == null) return null;
+            ByteBuffer head = readAt(in, 0, 2);
+            if (head.remaining() < 2 || (head.get(0) & 0xFF) != 0xFF || (head.get(1) & 0xFF) != 0xD8) return null;
+
+            ByteBuffer tiff = jpegExif(in);
+            if (tiff == null || tiff.remaining() < 8) return null;
+            tiff.order(tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+
+            // IFD1 follows IFD0's entries
+            int ifd0 = tiff.getInt(4);
+            if (ifd0 <= 0 || ifd0 + 2 > tiff.limit()) return null;
+            int next = ifd0 + 2 + (tiff.getShort(ifd0) & 0xFFFF) * 12;
+            if (next + 4 > tiff.limit()) return null;
+            int ifd1 = tiff.getInt(next);
+            if (ifd1 <= 0 || ifd1 + 2 > tiff.limit()) return null;
+
+            int offset = -1, length = -1;
+            int count = tiff.getShort(ifd1) & 0xFFFF;
+            for (int i = 0; i < count; i++) {
+                int entry = ifd1 + 2 + i * 12;
+                if (entry + 12 > tiff.limit()) break;
+                int tag = tiff.getShort(entry) & 0xFFFF;
+                if (tag == TAG_THUMBNAIL_OFFSET) offset = tiff.getInt(entry + 8);
+                if (tag == TAG_THUMBNAIL_LENGTH) length = tiff.getInt(entry + 8);
+            }
+            // Subtract rather than add, so a corrupt length cannot overflow past the check
+            if (offset <= 0 || length <= 0 || length > MAX_SEGMENT
+                    || offset > tiff.limit() || length > tiff.limit() - offset) return null;
+
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = tiff.get(offset + i);
+            }
+            return bytes;
+        } catch (IOException | RuntimeException | InternalError e) {
+            return null;
+        }
+    }
+
+    // Walks JPEG marker segments up to the start of scan; returns the TIFF structure of APP1 "Exif" or null
+    private static ByteBuffer jpegExif(ImageInputStream in) throws IOException {
+        long pos = 2;
+        while (true) {
+            ByteBuffer marker = readAt(in, pos, 4);
+            if (marker.remaining() < 4 || (marker.get(0) & 0xFF) != 0xFF) return null;
+
+            int type = marker.get(1) & 0xFF;
+            int length = marker.getShort(2) & 0xFFFF;
+            if (type == 0xDA || type == 0xD9) return null; // Pixel data starts; no EXIF
+
+            if (type == 0xE1 && length > 8) {
+                ByteBuffer segment = readAt(in, pos + 4, Math.min(length - 2, MAX_SEGMENT));
+                if (segment.remaining() > 6 && segment.get(0) == 'E' && segment.get(1) == 'x'
+                        && segment.get(2) == 'i' && segment.get(3) == 'f') {
+                    segment.position(6);
+                    return segment.slice();
+                }
+            }
+            pos += 2 + length;
+        }
+    }
+
+    // Walks PNG chunks looking for eXIf, stopping at the image data
+    private static Tags readPng(ImageInputStream in) throws IOException {
+        long pos = 8;
+        while (true) {
+            ByteBuffer header = readAt(in, pos, 8);
+            if (header.remaining() < 8) return Tags.EMPTY;
+
+            int length = header.getInt(0);
+            String type = new String(new byte[]{header.get(4), header.get(5), header.get(6), header.get(7)},
+                    StandardCharsets.US_ASCII);
+            if (type.equals("IDAT") || type.equals("IEND") || length < 0) return Tags.EMPTY;
+            if (type.equals("eXIf")) {
+                return parseTiff(readAt(in, pos + 8, Math.min(length, MAX_SEGMENT)));
+            }
+            pos += 12L + length;
+        }
+    }
+
+    /**
+     * A TIFF file, whose IFDs may be anywhere: writers commonly put IFD0 after the pixel
+     * data. IFD0 and the Exif sub-IFD are read at the offsets that point to them, so only
+     * the directories and the strings they reference come off disk.
+     */
+    private static Tags readTiff(ImageInputStream in, ByteOrder order) throws IOException {
+        ByteBuffer header = readAt(in, 0, 8).order(order);
+        String[] values = new String[3];
+        long exifIfd = readIfdAt(in, order, header.getInt(4) & 0xFFFFFFFFL, values);
+        if (exifIfd > 0) {
+            readIfdAt(in, order, exifIfd, values); // DateTimeOriginal there replaces IFD0's DateTime
+        }
+        return new Tags(values[0], values[1], values[2]);
+    }
+
+    // File-offset counterpart of readIfd; returns the Exif sub-IFD offset or 0
+    private static long readIfdAt(ImageInputStream in, ByteOrder order, long offset, String[] values)
+            throws IOException {
+        ByteBuffer countBytes = readAt(in, offset, 2).order(order);
+        if (offset <= 0 || countBytes.remaining() < 2) return 0;
+        int count = countBytes.getShort(0) & 0xFFFF;
+        ByteBuffer entries = readAt(in, offset + 2, count * 12).order(order);
+
+        long exifIfd = 0;
+        for (int entry = 0; entry + 12 <= entries.limit(); entry += 12) {
+            int tag = entries.getShort(entry) & 0xFFFF;
+            if (tag == TAG_EXIF_IFD) {
+                exifIfd = entries.getInt(entry + 8) & 0xFFFFFFFFL;
+            } else if (isText(tag)) {
+                int type = entries.getShort(entry + 2) & 0xFFFF;
+                int length = entries.getInt(entry + 4);
+                if (type != 2 || length <= 0 || length > MAX_STRING) continue;
+
+                byte[] bytes = new byte[length];
+                if (length <= 4) {
+                    entries.get(entry + 8, bytes);
+                } else {
+                    ByteBuffer value = readAt(in, entries.getInt(entry + 8) & 0xFFFFFFFFL, length);
+                    if (value.remaining() < length) continue;
+                    value.get(0, bytes);
+                }
+                assign(values, tag, text(bytes));
+            }
+        }
+        return exifIfd;
+    }
+
+    // Parses IFD0 and, if present, the Exif sub-IFD of a TIFF structure starting at offset 0
+    private static Tags parseTiff(ByteBuffer tiff) {
+        if (tiff.remaining() < 8) return Tags.EMPTY;
+        tiff.order(tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+
+        String[] values = new String[3]; // make, model, dateTime
+        int exifIfd = readIfd(tiff, tiff.getInt(4), values);
+        if (exifIfd > 0) {
+            readIfd(tiff, exifIfd, values); // DateTimeOriginal there replaces IFD0's DateTime
+        }
+        return new Tags(values[0], values[1], values[2]);
+    }
+
+    // Fills values from the IFD at offset; returns the Exif sub-IFD offset or 0
+    private static int readIfd(ByteBuffer tiff, int offset, String[] values) {
+        if (offset <= 0 || offset + 2 > tiff.limit()) return 0;
+
+        int exifIfd = 0;
+        int count = tiff.getShort(offset) & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            int entry = offset + 2 + i * 12;
+            if (entry + 12 > tiff.limit()) break;
+
+            int tag = tiff.getShort(entry) & 0xFFFF;
+            if (tag == TAG_EXIF_IFD) {
+                exifIfd = tiff.getInt(entry + 8);
+            } else if (isText(tag)) {
+                assign(values, tag, ascii(tiff, entry));
+            }
+        }
+        return exifIfd;
+    }
+
+    private static boolean isText(int tag) {
+        return tag == TAG_MAKE || tag == TAG_MODEL || tag == TAG_DATE_TIME || tag == TAG_DATE_TIME_ORIGINAL;
+    }
+
+    // Stores a make, model or date tag's value; the original capture date wins over DateTime
+    private static void assign(String[] values, int tag, String value) {
+        if (value == null) return;
+        switch (tag) {
+            case TAG_MAKE: values[0] = value; break;
+            case TAG_MODEL: values[1] = value; break;
+            case TAG_DATE_TIME:
+            case TAG_DATE_TIME_ORIGINAL:
+                if (values[2] == null || tag == TAG_DATE_TIME_ORIGINAL) values[2] = value;
+                break;
+            default: break;
+        }
+    }
+
+    private static String ascii(ByteBuffer tiff, int entry) {
+        int type = tiff.getShort(entry + 2) & 0xFFFF;
+        int count = tiff.getInt(entry + 4);
+        if (type != 2 || count <= 0 || count > MAX_STRING) return null;
+
+        // Values of up to 4 bytes are stored inline
+        int start = count <= 4 ? entry + 8 : tiff.getInt(entry + 8);
+        if (start < 0 || start > tiff.limit() || count > tiff.limit() - start) return null;
+
+        byte[] bytes = new byte[count];
+        for (int i = 0; i < count; i++) {
+            bytes[i] = tiff.get(start + i);
+        }
+        return text(bytes);
+    }
+
+    private static String text(byte[] bytes) {
+        String value = new String(bytes, StandardCharsets.US_ASCII).replace("\0", "").trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    // Up to length bytes at position; shorter at the end of the file
+    private static ByteBuffer readAt(ImageInputStream in, long position, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.seek(position);
+        int read = 0;
+        for (int n; read < length && (n = in.read(bytes, read, length - read)) > 0; ) {
+            read += n;
+        }
+        return ByteBuffer.wrap(bytes, 0, read);
+    }
+}
@@ -0,0 +1,173 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Watches a folder tree and reports image files as they appear, change or vanish.
+ * Created and modified files are held back until their size and mtime have been
+ * stable for the quiet period, so files still being copied in are not indexed
+ * half-written. Listener methods run on the watcher thread.
+ */
+class FolderWatcher implements Closeable {
+    interface Listener {
+        // A file was added or has finished changing
+        void upserted(Path file);
+
+        // A file or a whole folder was removed
+        void deleted(Path path);
+
+        // Events were lost; the folder has to be rescanned
+        void overflowed();
+    }
+
+    private final Path root;
+    private final Predicate<Path> filter;
+    private final Listener listener;
+    private final long quietMillis;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Map<Path, long[]> pending = new HashMap<>(); // path -> {last change time, size, mtime}
+    private final Thread thread;
+
+    FolderWatcher(Path root, Predicate<Path> filter, Listener listener, long quietMillis) throws IOException {
+        this.root = root;
+        this.filter = filter;
+        this.listener = listener;
+        this.quietMillis = quietMillis;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread(this::run, "folder-watcher");
+        this.thread.setDaemon(true);
+    }
+
+    void start() throws IOException {
+        registerTree(root, false);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = pending.isEmpty()
+                        ? watchService.take()
+                        : watchService.poll(Math.max(50, quietMillis / 4), TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    handle(key);
+                }
+                flushSettled();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Watcher closed
+        }
+    }
+
+    private void handle(WatchKey key) {
+        Path dir = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                pending.clear();
+                listener.overflowed();
+                continue;
+            }
+
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                pending.keySet().removeIf(p -> p.startsWith(path));
+                listener.deleted(path);
+            } else if (Files.isDirectory(path)) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    try {
+                        registerTree(path, true);
+                    } catch (IOException e) {
+                        System.err.println("Failed to watch: " + path);
+                    }
+                }
+            } else if (filter.test(path)) {
+                touch(path);
+            }
+        }
+
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    // Restarts the quiet period for a file that was just created or written to
+    private void touch(Path path) {
+        long[] state = pending.computeIfAbsent(path, p -> new long[]{0, -1, -1});
+        state[0] = System.currentTimeMillis();
+    }
+
+    // Reports files whose size and mtime did not change during the quiet period
+    private void flushSettled() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, long[]>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, long[]> entry = it.next();
+            long[] state = entry.getValue();
+            if (now - state[0] < quietMillis) continue;
+
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(entry.getKey(), BasicFileAttributes.class);
+                long size = attrs.size();
+                long mtime = attrs.lastModifiedTime().toMillis();
+                if (size != state[1] || mtime != state[2]) {
+                    // Still changing (or first check): wait another quiet period
+                    state[0] = now;
+                    state[1] = size;
+                    state[2] = mtime;
+                    continue;
+                }
+                it.remove();
+                listener.upserted(entry.getKey());
+            } catch (IOException e) {
+                it.remove(); // Gone again before it settled
+            }
+        }
+    }
+
+    // Watches dir and its subfolders; files already inside new folders are reported too
+    private void registerTree(Path dir, boolean reportFiles) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = d.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, d);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (reportFiles && filter.test(file)) {
+                    touch(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,258 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import org.w3c.dom.Node;
+
+/**
+ * Plays an animated GIF by decoding frames one at a time on a background thread.
+ * Each frame is composed onto a persistent canvas according to its disposal method,
+ * then copied into one of a few recycled buffers; only those buffers and the canvas
+ * are ever held, however many frames the file has. Frames are handed to the EDT on
+ * a wall-clock schedule, so a slow decode delays a frame instead of slowing the whole
+ * animation down. Single-frame GIFs deliver nothing.
+ */
+class GifAnimation implements Closeable {
+    private static final int RING = 3; // Composed frames decoded ahead of the one on screen
+    private static final int MIN_DELAY_MILLIS = 20; // Browsers treat shorter delays as 100 ms
+
+    private static final class Frame {
+        final BufferedImage image;
+        final int delayMillis;
+
+        Frame(BufferedImage image, int delayMillis) {
+            this.image = image;
+            this.delayMillis = delayMillis;
+        }
+    }
+
+    private final File file;
+    private final Consumer<BufferedImage> onFrame;
+    private final BlockingQueue<Frame> ready = new ArrayBlockingQueue<>(RING);
+    private final BlockingQueue<BufferedImage> free = new ArrayBlockingQueue<>(RING + 1);
+    private final Thread decoder;
+    private final Timer clock;
+
+    private Frame showing;
+    private long nextDue;
+    private volatile boolean closed = false;
+
+    /**
+     * @param onFrame receives each composed frame on the EDT; the image is reused for a
+     *                later frame once the next one has been delivered
+     */
+    GifAnimation(File file, Consumer<BufferedImage> onFrame) {
+        this.file = file;
+        this.onFrame = onFrame;
+        this.decoder = new Thread(this::decodeLoop, "gif-decoder");
+        this.decoder.setDaemon(true);
+        this.clock = new Timer(0, e -> tick());
+        this.clock.setRepeats(false);
+    }
+
+    static boolean isGif(String path) {
+        return path.toLowerCase().endsWith(".gif");
+    }
+
+    void start() {
+        decoder.start();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        clock.stop();
+        decoder.interrupt();
+    }
+
+    // EDT: shows the next frame if it is due and decoded, then re-arms for the one after
+    private void tick() {
+        if (closed) return;
+
+        long now = System.currentTimeMillis();
+        Frame next = ready.poll();
+        if (next == null) {
+            clock.setInitialDelay(10); // Decoder is behind; check again shortly
+            clock.start();
+            return;
+        }
+
+        onFrame.accept(next.image);
+        if (showing != null) {
+            free.offer(showing.image);
+        }
+        showing = next;
+
+        // Keep to the file's timing, but don't race to catch up after a long stall
+        nextDue = now - nextDue > 1000 ? now + next.delayMillis : nextDue + next.delayMillis;
+        clock.setInitialDelay((int) Math.max(0, nextDue - now));
+        clock.start();
+    }
+
+    private void decodeLoop() {
+        try (ImageInputStream iis = MappedFiles.open(file)) {
+            if (iis == null) return;
+            Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("gif");
+            if (!readers.hasNext()) return;
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, false, false);
+                if (!hasFrame(reader, 1)) return; // A still image; the normal decode already shows it
+
+                int[] screen = logicalScreen(reader);
+                BufferedImage canvas = new BufferedImage(screen[0], screen[1], BufferedImage.TYPE_INT_ARGB);
+                BufferedImage saved = null;
+                int allocated = 0;
+                boolean first = true;
+
+                for (int i = 0; !closed; i++) {
+                    if (!hasFrame(reader, i)) {
+                        // Loop: start again from an empty canvas
+                        i = -1;
+                        clear(canvas, new Rectangle(canvas.getWidth(), canvas.getHeight()));
+                        continue;
+                    }
+
+                    FrameInfo info = frameInfo(reader.getImageMetadata(i));
+                    BufferedImage image = reader.read(i);
+                    Rectangle bounds = new Rectangle(info.left, info.top, image.getWidth(), image.getHeight());
+
+                    if (info.disposal.equals("restoreToPrevious")) {
+                        saved = copy(canvas, saved);
+                    }
+                    Graphics2D g = canvas.createGraphics();
+                    g.drawImage(image, info.left, info.top, null);
+                    g.dispose();
+
+                    // Copy the composed canvas into a ring buffer for display
+                    BufferedImage out = free.poll();
+                    if (out == null && allocated < RING + 1) {
+                        out = new BufferedImage(canvas.getWidth(), canvas.getHeight(), BufferedImage.TYPE_INT_ARGB);
+                        allocated++;
+                    } else if (out == null) {
+                        out = free.take();
+                    }
+                    copy(canvas, out);
+                    ready.put(new Frame(out, info.delayMillis >= MIN_DELAY_MILLIS ? info.delayMillis : 100));
+
+                    if (first) {
+                        first = false;
+                        SwingUtilities.invokeLater(() -> {
+                            nextDue = System.currentTimeMillis();
+                            tick();
+                        });
+                    }
+
+                    // Prepare the canvas for the next frame
+                    if (info.disposal.equals("restoreToBackgroundColor")) {
+                        clear(canvas, bounds);
+                    } else if (info.disposal.equals("restoreToPrevious") && saved != null) {
+                        copy(saved, canvas);
+                    }
+                }
+            } finally {
+                reader.dispose();
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        } catch (IOException | RuntimeException | InternalError e) {
+            if (!closed) {
+                System.err.println("Failed to animate " + file.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static boolean hasFrame(ImageReader reader, int index) throws IOException {
+        try {
+            reader.getImageMetadata(index);
+            return true;
+        } catch (IndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+
+    // Logical screen size from the stream metadata, or the first frame's size
+    private static int[] logicalScreen(ImageReader reader) throws IOException {
+        IIOMetadata stream = reader.getStreamMetadata();
+        if (stream != null) {
+            Node node = find(stream.getAsTree("javax_imageio_gif_stream_1.0"), "LogicalScreenDescriptor");
+            if (node != null) {
+                int w = intAttribute(node, "logicalScreenWidth", 0);
+                int h = intAttribute(node, "logicalScreenHeight", 0);
+                if (w > 0 && h > 0) return new int[]{w, h};
+            }
+        }
+        return new int[]{reader.getWidth(0), reader.getHeight(0)};
+    }
+
+    private static final class FrameInfo {
+        int left, top, delayMillis;
+        String disposal = "none";
+    }
+
+    private static FrameInfo frameInfo(IIOMetadata metadata) {
+        FrameInfo info = new FrameInfo();
+        Node root = metadata.getAsTree("javax_imageio_gif_image_1.0");
+        Node descriptor = find(root, "ImageDescriptor");
+        if (descriptor != null) {
+            info.left = intAttribute(descriptor, "imageLeftPosition", 0);
+            info.top = intAttribute(descriptor, "imageTopPosition", 0);
+        }
+        Node control = find(root, "GraphicControlExtension");
+        if (control != null) {
+            info.delayMillis = intAttribute(control, "delayTime", 0) * 10;
+            Node disposal = control.getAttributes().getNamedItem("disposalMethod");
+            if (disposal != null) info.disposal = disposal.getNodeValue();
+        }
+        return info;
+    }
+
+    private static Node find(Node root, String name) {
+        for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeName().equals(name)) return child;
+        }
+        return null;
+    }
+
+    private static int intAttribute(Node node, String name, int fallback) {
+        Node attr = node.getAttributes().getNamedItem(name);
+        try {
+            return attr == null ? fallback : Integer.parseInt(attr.getNodeValue());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    // Copies all pixels, alpha included, from src into dst (allocated if null)
+    private static BufferedImage copy(BufferedImage src, BufferedImage dst) {
+        if (dst == null) {
+            dst = new BufferedImage(src.getWidth(), src.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        }
+        Graphics2D g = dst.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(src, 0, 0, null);
+        g.dispose();
+        return dst;
+    }
+
+    private static void clear(BufferedImage canvas, Rectangle region) {
+        Graphics2D g = canvas.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fill(region);
+        g.dispose();
+    }
+}
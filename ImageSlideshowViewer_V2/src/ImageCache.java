@@ -0,0 +1,245 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Decoded image cache bounded by raster size in bytes.
+ * Entries are evicted in least-recently-used order once the budget is exceeded.
+ *
+ * With an off-heap budget the cache has two tiers: the heap tier keeps the rasters
+ * in use (the visible slide and the prefetch window), and a raster it evicts is
+ * demoted into a compact RasterStore outside the heap rather than dropped. A hit in
+ * the store alone is copied back onto the heap, so heap use and GC work stay flat
+ * however large the off-heap budget is, and a raster that is shown and replaced
+ * within the heap budget is never copied at all.
+ */
+class ImageCache {
+    private final LinkedHashMap<String, BufferedImage> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final long budgetBytes;
+    private final RasterStore store; // Null without an off-heap tier
+    // Evicted from the heap tier, still being copied into the store; hits are served from here
+    private final Map<String, BufferedImage> demoting = new HashMap<>();
+    private long usedBytes;
+    private Consumer<String> evictionListener = key -> { };
+
+    // Counters
+    private long hits, misses, evictions, storeHits;
+
+    ImageCache(long budgetBytes) {
+        this(budgetBytes, 0);
+    }
+
+    ImageCache(long budgetBytes, long offHeapBudgetBytes) {
+        this.budgetBytes = budgetBytes;
+        this.store = offHeapBudgetBytes > 0 ? new RasterStore(offHeapBudgetBytes) : null;
+    }
+
+    // Heap budget as a percentage of the maximum heap (-Xmx), plus an off-heap budget
+    static ImageCache withHeapPercent(int percent, long offHeapBudgetBytes) {
+        int clamped = Math.max(1, Math.min(percent, 90));
+        return new ImageCache(Runtime.getRuntime().maxMemory() / 100 * clamped, offHeapBudgetBytes);
+    }
+
+    // Told the key of each entry evicted from both tiers; runs after the cache lock is released
+    synchronized void setEvictionListener(Consumer<String> listener) {
+        evictionListener = listener;
+    }
+
+    BufferedImage get(String key) {
+        List<Map.Entry<String, BufferedImage>> evicted = null;
+        BufferedImage img;
+        synchronized (this) {
+            img = entries.get(key);
+            if (img != null) {
+                hits++;
+                return img;
+            }
+            img = demoting.get(key);
+            if (img != null) {
+                hits++;
+                evicted = putOnHeap(key, img);
+            } else if (store == null) {
+                misses++;
+                return null;
+            }
+        }
+
+        if (img == null) {
+            // Copy out of the store without holding the cache lock
+            img = store.get(key);
+            synchronized (this) {
+                if (img == null) {
+                    misses++;
+                    return null;
+                }
+                hits++;
+                storeHits++;
+                evicted = putOnHeap(key, img);
+            }
+        }
+        demote(evicted);
+        return img;
+    }
+
+    synchronized boolean contains(String key) {
+        return entries.containsKey(key) || demoting.containsKey(key) || (store != null && store.contains(key));
+    }
+
+    // Whether any key starting with prefix is still held in either tier
+    synchronized boolean containsPrefix(String prefix) {
+        for (String key : entries.keySet()) {
+            if (key.startsWith(prefix)) return true;
+        }
+        for (String key : demoting.keySet()) {
+            if (key.startsWith(prefix)) return true;
+        }
+        return store != null && store.containsPrefix(prefix);
+    }
+
+    void put(String key, BufferedImage img) {
+        List<Map.Entry<String, BufferedImage>> evicted;
+        synchronized (this) {
+            evicted = putOnHeap(key, img);
+        }
+        demote(evicted);
+    }
+
+    // Returns the entries evicted from the heap tier to make room, which the caller hands to
+    // demote() once the lock is released
+    private List<Map.Entry<String, BufferedImage>> putOnHeap(String key, BufferedImage img) {
+        List<Map.Entry<String, BufferedImage>> evicted = new ArrayList<>();
+        long bytes = sizeOf(img);
+        if (bytes > budgetBytes) {
+            // Would evict everything else for a single entry; only the store may keep it
+            if (store != null) evicted.add(new AbstractMap.SimpleImmutableEntry<>(key, img));
+        } else {
+            BufferedImage previous = entries.put(key, img);
+            if (previous != null) {
+                usedBytes -= sizeOf(previous);
+            }
+            usedBytes += bytes;
+
+            Iterator<Map.Entry<String, BufferedImage>> it = entries.entrySet().iterator();
+            while (usedBytes > budgetBytes && it.hasNext()) {
+                Map.Entry<String, BufferedImage> eldest = it.next();
+                if (eldest.getKey().equals(key)) continue;
+                usedBytes -= sizeOf(eldest.getValue());
+                evicted.add(new AbstractMap.SimpleImmutableEntry<>(eldest));
+                it.remove();
+            }
+        }
+        if (store != null) {
+            for (Map.Entry<String, BufferedImage> e : evicted) {
+                if (!store.contains(e.getKey())) demoting.put(e.getKey(), e.getValue());
+            }
+        }
+        return evicted;
+    }
+
+    // Copies rasters evicted from the heap tier into the store, which may evict older ones
+    // in turn, and tells the listener about every key now gone from both tiers. Called
+    // without the cache lock: copying a raster off-heap takes a while.
+    private void demote(List<Map.Entry<String, BufferedImage>> evicted) {
+        if (evicted == null || evicted.isEmpty()) return;
+        List<String> gone = new ArrayList<>();
+        for (Map.Entry<String, BufferedImage> e : evicted) {
+            String key = e.getKey();
+            if (store != null) {
+                boolean copy;
+                synchronized (this) {
+                    copy = demoting.get(key) == e.getValue();
+                }
+                if (copy) gone.addAll(store.put(key, e.getValue()));
+                synchronized (this) {
+                    demoting.remove(key, e.getValue());
+                }
+            }
+            gone.add(key);
+        }
+
+        Consumer<String> listener;
+        List<String> evictedKeys = new ArrayList<>();
+        synchronized (this) {
+            for (String key : gone) {
+                if (!entries.containsKey(key) && !demoting.containsKey(key)
+                        && (store == null || !store.contains(key)) && !evictedKeys.contains(key)) {
+                    evictedKeys.add(key);
+                }
+            }
+            evictions += evictedKeys.size();
+            listener = evictionListener;
+        }
+        for (String key : evictedKeys) {
+            listener.accept(key);
+        }
+    }
+
+    synchronized void remove(String key) {
+        BufferedImage img = entries.remove(key);
+        if (img != null) {
+            usedBytes -= sizeOf(img);
+        }
+        demoting.remove(key);
+        if (store != null) {
+            store.remove(key);
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        demoting.clear();
+        usedBytes = 0;
+        if (store != null) {
+            store.clear();
+        }
+    }
+
+    // Bytes the raster's backing store holds: an INT_RGB pixel takes 4, not its 24 bits of colour
+    static long sizeOf(BufferedImage img) {
+        DataBuffer buffer = img.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized long getEvictions() {
+        return evictions;
+    }
+
+    synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    long getOffHeapBytes() {
+        return store != null ? store.getUsedBytes() : 0;
+    }
+
+    long getOffHeapBudgetBytes() {
+        return store != null ? store.getBudgetBytes() : 0;
+    }
+
+    synchronized String stats() {
+        String heap = String.format("Cache: %d images, %d/%d MB, %d hits, %d misses, %d evictions",
+                entries.size(), usedBytes >> 20, budgetBytes >> 20, hits, misses, evictions);
+        if (store == null) return heap;
+        return heap + String.format("; off-heap %d images, %d/%d MB, %d hits",
+                store.size(), store.getUsedBytes() >> 20, store.getBudgetBytes() >> 20, storeHits);
+    }
+}
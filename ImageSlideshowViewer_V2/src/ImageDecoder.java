@@ -0,0 +1,585 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Decode entry point that reads only as many source pixels as the display needs.
+ * The decoder for a file is picked by sniffing its first bytes, not its extension,
+ * from a registry of providers with ImageIO's own reader search as the fallback.
+ * Every call runs under its provider's timeout and pixel cap, so one corrupt or
+ * enormous file fails on its own instead of stalling a loader or exhausting the heap.
+ */
+final class ImageDecoder {
+    private static final long DEFAULT_TIMEOUT_MILLIS = 30_000;
+    // A quarter of the heap at 4 bytes per pixel
+    private static final long DEFAULT_MAX_PIXELS = Runtime.getRuntime().maxMemory() / 16;
+    private static final int HEADER_BYTES = 16;
+    private static final int DECODER_THREADS =
+            Integer.getInteger("slideshow.loaders", Runtime.getRuntime().availableProcessors());
+
+    /** Decoder for one family of formats. */
+    interface Provider {
+        String name();
+
+        // Whether a file starting with these bytes is in this provider's format
+        boolean accepts(byte[] header, int length);
+
+        Dimension readSize(File file, Job job) throws IOException;
+
+        // The region (null for the whole image) at 1/subsampling of the source resolution;
+        // size is the whole image's, already read from the header
+        BufferedImage decode(File file, Dimension size, Rectangle region, int subsampling, Job job)
+                throws IOException;
+
+        default long timeoutMillis() {
+            return Long.getLong("slideshow.decoder." + name() + ".timeoutMillis", DEFAULT_TIMEOUT_MILLIS);
+        }
+
+        default long maxPixels() {
+            Long megapixels = Long.getLong("slideshow.decoder." + name() + ".maxMegapixels");
+            return megapixels != null ? megapixels * 1_000_000L : DEFAULT_MAX_PIXELS;
+        }
+    }
+
+    /** Receives coarse versions of an image while it is still being decoded. */
+    interface PassListener {
+        // Called on the decoding thread; coarse is a copy the listener may keep
+        void pass(BufferedImage coarse, int subsampling);
+    }
+
+    /** One decode call; providers register how to stop it early. */
+    static final class Job {
+        private final PassListener passes;
+        private volatile Runnable abort;
+        private volatile boolean aborted = false;
+        private volatile long started = 0; // nanoTime when a decoder thread picked the job up
+
+        private Job(PassListener passes) {
+            this.passes = passes;
+        }
+
+        // Where to send intermediate passes, or null if the caller only wants the result
+        PassListener passes() {
+            return passes;
+        }
+
+        void onAbort(Runnable action) {
+            abort = action;
+            if (aborted) action.run();
+        }
+
+        boolean isAborted() {
+            return aborted;
+        }
+
+        private void abort() {
+            aborted = true;
+            Runnable action = abort;
+            if (action != null) action.run();
+        }
+    }
+
+    private static final List<Provider> PROVIDERS = new CopyOnWriteArrayList<>(Arrays.asList(
+            new ImageIOProvider("jpeg", "jpeg", new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}),
+            new ImageIOProvider("png", "png", new byte[]{(byte) 0x89, 'P', 'N', 'G'}),
+            new ImageIOProvider("gif", "gif", ascii("GIF8")),
+            new ImageIOProvider("bmp", "bmp", ascii("BM")),
+            new ImageIOProvider("tiff", "tiff", new byte[]{'I', 'I', 42, 0}, new byte[]{'M', 'M', 0, 42})));
+    private static final Provider FALLBACK = new ImageIOProvider("imageio", null);
+
+    // Bounded so decodes that ignore abort cannot pile up threads; a timed-out decode is
+    // stopped through its reader rather than left running
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(DECODER_THREADS, r -> {
+        Thread t = new Thread(r, "image-decoder");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ImageDecoder() {
+    }
+
+    // Adds a provider that takes precedence over the built-in ones
+    static void register(Provider provider) {
+        PROVIDERS.add(0, provider);
+    }
+
+    static Provider providerFor(File file) throws IOException {
+        byte[] header = new byte[HEADER_BYTES];
+        int length = 0;
+        try (ImageInputStream in = MappedFiles.open(file)) {
+            if (in == null) throw new IOException("Cannot open " + file.getName());
+            for (int n; length < header.length && (n = in.read(header, length, header.length - length)) > 0; ) {
+                length += n;
+            }
+        } catch (InternalError e) {
+            throw changed(file, e);
+        }
+        for (Provider provider : PROVIDERS) {
+            if (provider.accepts(header, length)) return provider;
+        }
+        return FALLBACK;
+    }
+
+    // Largest power-of-two subsampling that still gives at least one raster pixel per screen pixel
+    static int subsamplingFor(double scale) {
+        int subsampling = 1;
+        while (subsampling < 64 && subsampling * 2 * scale <= 1.0) {
+            subsampling *= 2;
+        }
+        return subsampling;
+    }
+
+    // Width and height from the file header, or null if the file is not a readable image;
+    // a header read is short, so it runs on the calling thread
+    static Dimension readSize(File file) throws IOException {
+        Provider provider = providerFor(file);
+        try {
+            return provider.readSize(file, new Job(null));
+        } catch (InternalError e) {
+            throw changed(file, e);
+        }
+    }
+
+    // Decodes every n-th pixel and row, so the raster is 1/n² of the full size
+    static BufferedImage decode(File file, int subsampling) throws IOException {
+        return decode(file, null, subsampling, null);
+    }
+
+    /**
+     * Like decode, but a progressive JPEG or interlaced PNG also reports each pass that
+     * improves on the last as a coarse copy, long before the full raster is done.
+     */
+    static BufferedImage decode(File file, int subsampling, PassListener passes) throws IOException {
+        return decode(file, null, subsampling, passes);
+    }
+
+    // Size is the image's width and height when already known, as after indexing, which
+    // spares the decode a separate header read; null to read it
+    static BufferedImage decode(File file, Dimension size, int subsampling, PassListener passes)
+            throws IOException {
+        long start = System.nanoTime();
+        BufferedImage img = read(file, size, null, subsampling, passes);
+        record(Metrics.DECODE, start, img);
+        return img;
+    }
+
+    // Decodes only the given source rectangle, subsampled by the given factor
+    static BufferedImage decodeRegion(File file, Rectangle region, int subsampling) throws IOException {
+        return decodeRegion(file, null, region, subsampling);
+    }
+
+    static BufferedImage decodeRegion(File file, Dimension size, Rectangle region, int subsampling)
+            throws IOException {
+        long start = System.nanoTime();
+        BufferedImage img = read(file, size, region, subsampling, null);
+        record(Metrics.REGION, start, img);
+        return img;
+    }
+
+    // Whether the file is a progressive JPEG or an interlaced PNG, whose passes a decode can report
+    static boolean isProgressive(File file) {
+        try (ImageInputStream in = MappedFiles.open(file)) {
+            if (in == null) return false;
+            int b0 = in.read(), b1 = in.read();
+            if (b0 == 0x89 && b1 == 'P') {
+                in.seek(28); // Interlace method in IHDR
+                return in.read() == 1;
+            }
+            if (b0 != 0xFF || b1 != 0xD8) return false;
+
+            // Walk marker segments to the start-of-frame
+            while (true) {
+                if (in.read() != 0xFF) return false;
+                int marker = in.read();
+                if (marker == 0xC2 || marker == 0xC6 || marker == 0xCA || marker == 0xCE) return true;
+                if ((marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC)
+                        || marker == 0xDA || marker < 0) {
+                    return false;
+                }
+                int length = in.readUnsignedShort();
+                in.seek(in.getStreamPosition() + length - 2);
+            }
+        } catch (IOException | InternalError e) {
+            return false;
+        }
+    }
+
+    private static BufferedImage read(File file, Dimension knownSize, Rectangle region, int subsampling,
+                                      PassListener passes) throws IOException {
+        Provider provider = providerFor(file);
+        return bounded(provider, file, passes, job -> {
+            Dimension size = knownSize != null ? knownSize : provider.readSize(file, job);
+            if (size == null) return null;
+
+            long w = region != null ? region.width : size.width;
+            long h = region != null ? region.height : size.height;
+            long pixels = ((w + subsampling - 1) / subsampling) * ((h + subsampling - 1) / subsampling);
+            if (pixels > provider.maxPixels()) {
+                throw new IOException(String.format("%s: %d megapixels at 1/%d exceeds the %s decoder's cap",
+                        file.getName(), pixels / 1_000_000, subsampling, provider.name()));
+            }
+            return provider.decode(file, size, region, subsampling, job);
+        });
+    }
+
+    private interface Task<T> {
+        T run(Job job) throws IOException;
+    }
+
+    // Runs the task on a decoder thread, aborting it once the provider's timeout passes;
+    // the timeout counts from when a thread picks the task up, not from the queue
+    private static <T> T bounded(Provider provider, File file, PassListener passes, Task<T> task)
+            throws IOException {
+        Job job = new Job(passes);
+        Callable<T> call = () -> {
+            job.started = System.nanoTime();
+            return task.run(job);
+        };
+        Future<T> future = WORKERS.submit(call);
+        long timeout = provider.timeoutMillis();
+        try {
+            while (true) {
+                long started = job.started;
+                long remaining = started == 0 ? timeout
+                        : timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                if (remaining <= 0) break;
+                try {
+                    return future.get(remaining, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // Either still queued behind other decodes or out of time; the loop tells which
+                }
+            }
+            job.abort(); // Stops the reader and closes its stream so the thread comes back
+            future.cancel(true);
+            throw new IOException(file.getName() + ": " + provider.name() + " decoder timed out after "
+                    + timeout + " ms");
+        } catch (InterruptedException e) {
+            job.abort();
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Decode interrupted: " + file.getName());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof OutOfMemoryError) throw new IOException(file.getName() + ": out of memory");
+            if (cause instanceof InternalError) throw changed(file, (InternalError) cause);
+            throw new IOException(file.getName() + ": " + cause, cause);
+        }
+    }
+
+    // A read of a memory-mapped file faulted because the file shrank under the mapping
+    private static IOException changed(File file, InternalError e) {
+        MappedFiles.release(file.getPath());
+        return new IOException(file.getName() + " changed while being read", e);
+    }
+
+    private static void record(Metrics.Histogram histogram, long start, BufferedImage img) {
+        histogram.recordSince(start);
+        if (img != null) {
+            Metrics.BYTES_DECODED.add(ImageCache.sizeOf(img));
+        }
+    }
+
+    private static byte[] ascii(String magic) {
+        return magic.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Decodes through an ImageIO reader for one format, or through whichever reader
+     * accepts the stream when format is null. Subsampling and regions are applied by
+     * the reader, so skipped rows and columns never reach a raster.
+     */
+    static class ImageIOProvider implements Provider {
+        private final String name, format;
+        private final byte[][] magics;
+
+        ImageIOProvider(String name, String format, byte[]... magics) {
+            this.name = name;
+            this.format = format;
+            this.magics = magics;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public boolean accepts(byte[] header, int length) {
+            if (format == null) return true;
+            for (byte[] magic : magics) {
+                if (length >= magic.length && Arrays.equals(header, 0, magic.length, magic, 0, magic.length)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private ImageReader reader(ImageInputStream iis) {
+            Iterator<ImageReader> readers = format != null
+                    ? ImageIO.getImageReadersByFormatName(format) : ImageIO.getImageReaders(iis);
+            return readers.hasNext() ? readers.next() : null;
+        }
+
+        @Override
+        public Dimension readSize(File file, Job job) throws IOException {
+            try (ImageInputStream iis = MappedFiles.open(file)) {
+                if (iis == null) return null;
+                ImageReader reader = reader(iis);
+                if (reader == null) return null;
+                try {
+                    reader.setInput(iis, true, true);
+                    return new Dimension(reader.getWidth(0), reader.getHeight(0));
+                } finally {
+                    reader.dispose();
+                }
+            }
+        }
+
+        @Override
+        public BufferedImage decode(File file, Dimension size, Rectangle region, int subsampling, Job job)
+                throws IOException {
+            try (ImageInputStream iis = MappedFiles.open(file)) {
+                if (iis == null) return null;
+                ImageReader reader = reader(iis);
+                if (reader == null) return null;
+                try {
+                    reader.setInput(iis, true, true);
+                    job.onAbort(() -> abort(reader, iis));
+                    reader.addIIOReadProgressListener(new AbortCheck(job));
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    if (region != null) {
+                        param.setSourceRegion(region);
+                    }
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                    if (job.passes() != null && isProgressive(file)) {
+                        reader.addIIOReadUpdateListener(new PassTracker(subsampling, job.passes()));
+                    }
+                    BufferedImage img = reader.read(0, param);
+                    if (job.isAborted()) throw new IOException("Decode aborted: " + file.getName());
+                    return img;
+                } finally {
+                    reader.dispose();
+                }
+            }
+        }
+    }
+
+    /**
+     * Turns reader passes into coarse previews. Each pass fills the destination on a
+     * grid (Adam7 in PNG: 8x8, then 4x8 offset, ...; every pass of a progressive JPEG
+     * covers every pixel at lower fidelity), so the tracker marks which phases of an
+     * 8x8 cell are filled and, when a finer regular grid becomes complete, hands out
+     * the destination sampled on that grid. The final full-grid pass is left to the
+     * decode result, except for a progressive JPEG's first scan.
+     */
+    private static final class PassTracker implements IIOReadUpdateListener {
+        private final int subsampling;
+        private final PassListener listener;
+        private final boolean[] filled = new boolean[64];
+        private int offsetX, offsetY, periodX, periodY;
+        private int delivered = 16; // Grid step of the last preview; coarser than any pass
+
+        PassTracker(int subsampling, PassListener listener) {
+            this.subsampling = subsampling;
+            this.listener = listener;
+        }
+
+        @Override
+        public void passStarted(ImageReader source, BufferedImage theImage, int pass, int minPass, int maxPass,
+                                int minX, int minY, int periodX, int periodY, int[] bands) {
+            this.offsetX = minX;
+            this.offsetY = minY;
+            this.periodX = Math.max(1, periodX);
+            this.periodY = Math.max(1, periodY);
+        }
+
+        @Override
+        public void passComplete(ImageReader source, BufferedImage theImage) {
+            for (int y = 0; y < 8; y++) {
+                for (int x = 0; x < 8; x++) {
+                    if (Math.floorMod(x - offsetX, periodX) == 0 && Math.floorMod(y - offsetY, periodY) == 0) {
+                        filled[y * 8 + x] = true;
+                    }
+                }
+            }
+
+            int step = 8;
+            while (step > 1 && complete(step / 2)) step /= 2;
+            if (!complete(step) || step >= delivered || (step == 1 && delivered <= 8)) return;
+            delivered = step;
+            listener.pass(sample(theImage, step), subsampling * step);
+        }
+
+        private boolean complete(int step) {
+            for (int y = 0; y < 8; y += step) {
+                for (int x = 0; x < 8; x += step) {
+                    if (!filled[y * 8 + x]) return false;
+                }
+            }
+            return true;
+        }
+
+        private static BufferedImage sample(BufferedImage image, int step) {
+            int w = (image.getWidth() + step - 1) / step, h = (image.getHeight() + step - 1) / step;
+            BufferedImage out = new BufferedImage(w, h, image.getColorModel().hasAlpha()
+                    ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            int[] row = new int[image.getWidth()];
+            int[] sampled = new int[w];
+            for (int y = 0; y < h; y++) {
+                image.getRGB(0, y * step, image.getWidth(), 1, row, 0, row.length);
+                for (int x = 0; x < w; x++) {
+                    sampled[x] = row[x * step];
+                }
+                out.setRGB(0, y, w, 1, sampled, 0, w);
+            }
+            return out;
+        }
+
+        @Override
+        public void imageUpdate(ImageReader source, BufferedImage theImage, int minX, int minY,
+                                int width, int height, int periodX, int periodY, int[] bands) {
+        }
+
+        @Override
+        public void thumbnailPassStarted(ImageReader source, BufferedImage theThumbnail, int pass, int minPass,
+                                         int maxPass, int minX, int minY, int periodX, int periodY, int[] bands) {
+        }
+
+        @Override
+        public void thumbnailUpdate(ImageReader source, BufferedImage theThumbnail, int minX, int minY,
+                                    int width, int height, int periodX, int periodY, int[] bands) {
+        }
+
+        @Override
+        public void thumbnailPassComplete(ImageReader source, BufferedImage theThumbnail) {
+        }
+    }
+
+    /**
+     * Aborts the reader from its own decoding thread once the job is aborted. Readers that
+     * lock themselves to that thread (the JDK's JPEG reader does) refuse abort() from the
+     * waiting one, but check progress between rows and stop cleanly here.
+     */
+    private static final class AbortCheck implements IIOReadProgressListener {
+        private final Job job;
+
+        AbortCheck(Job job) {
+            this.job = job;
+        }
+
+        @Override
+        public void imageProgress(ImageReader source, float percentageDone) {
+            if (job.isAborted()) source.abort();
+        }
+
+        @Override
+        public void sequenceStarted(ImageReader source, int minIndex) {
+        }
+
+        @Override
+        public void sequenceComplete(ImageReader source) {
+        }
+
+        @Override
+        public void imageStarted(ImageReader source, int imageIndex) {
+        }
+
+        @Override
+        public void imageComplete(ImageReader source) {
+        }
+
+        @Override
+        public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex) {
+        }
+
+        @Override
+        public void thumbnailProgress(ImageReader source, float percentageDone) {
+        }
+
+        @Override
+        public void thumbnailComplete(ImageReader source) {
+        }
+
+        @Override
+        public void readAborted(ImageReader source) {
+        }
+    }
+
+    // Called from the waiting thread; some readers refuse abort() from a thread other than
+    // the decoding one, so also close the stream under them to make the next read fail
+    private static void abort(ImageReader reader, ImageInputStream iis) {
+        try {
+            reader.abort();
+        } catch (IllegalStateException e) {
+            // Reader is locked to the decoding thread
+        }
+        try {
+            iis.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    /**
+     * A coarse raster at the given subsampling when one can be had without touching the
+     * image data: a JPEG's EXIF thumbnail, scaled up as needed. Null otherwise. ImageIO
+     * subsampling still runs the full entropy decode and IDCT for JPEG and the full inflate
+     * for a non-interlaced PNG, so a subsampled decode is no quick preview.
+     */
+    static BufferedImage quickPreview(File file, int width, int height, int subsampling) {
+        byte[] bytes = ExifReader.readThumbnail(file.toPath());
+        if (bytes == null || width <= 0 || height <= 0) return null;
+        try {
+            return fromThumbnail(bytes, width, height, subsampling);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // The thumbnail drawn at exactly the raster size of the subsampled image, or null when
+    // its aspect ratio differs
+    private static BufferedImage fromThumbnail(byte[] bytes, int width, int height, int subsampling)
+            throws IOException {
+        BufferedImage thumb = ImageIO.read(new ByteArrayInputStream(bytes));
+        if (thumb == null) return null;
+
+        int w = (width + subsampling - 1) / subsampling;
+        int h = (height + subsampling - 1) / subsampling;
+        double aspect = (double) width / height;
+        double thumbAspect = (double) thumb.getWidth() / thumb.getHeight();
+        if (Math.abs(aspect / thumbAspect - 1) > 0.02) return null;
+
+        // Callers map raster pixels to source pixels by the subsampling factor, so match it exactly
+        BufferedImage raster = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = raster.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(thumb, 0, 0, w, h, null);
+        g.dispose();
+        return raster;
+    }
+}
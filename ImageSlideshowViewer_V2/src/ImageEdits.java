@@ -0,0 +1,112 @@
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * Non-destructive edit state: a crop rectangle plus quarter-turn rotation and flips.
+ * Edits compose into a single transform that is applied when painting; pixels are
+ * only produced by {@link #render} for export.
+ */
+final class ImageEdits {
+    private int rotation = 0; // Clockwise degrees, multiple of 90
+    private boolean flipH = false, flipV = false;
+    private Rectangle crop; // Source pixels, null for the whole image
+
+    void rotate() {
+        rotation = (rotation + 90) % 360;
+    }
+
+    void flip(boolean horizontal, boolean vertical) {
+        if (horizontal) flipH = !flipH;
+        if (vertical) flipV = !flipV;
+    }
+
+    void crop(Rectangle region) {
+        crop = new Rectangle(region);
+    }
+
+    void reset() {
+        rotation = 0;
+        flipH = false;
+        flipV = false;
+        crop = null;
+    }
+
+    // Independent copy, for rendering on another thread while editing carries on
+    ImageEdits copy() {
+        ImageEdits c = new ImageEdits();
+        c.rotation = rotation;
+        c.flipH = flipH;
+        c.flipV = flipV;
+        c.crop = crop != null ? new Rectangle(crop) : null;
+        return c;
+    }
+
+    boolean isIdentity() {
+        return rotation == 0 && !flipH && !flipV && crop == null;
+    }
+
+    Rectangle cropBounds(int srcW, int srcH) {
+        return crop != null ? new Rectangle(crop) : new Rectangle(0, 0, srcW, srcH);
+    }
+
+    // Size of the edited image in source pixels
+    Dimension outputSize(int srcW, int srcH) {
+        Rectangle c = cropBounds(srcW, srcH);
+        return rotation % 180 == 0 ? new Dimension(c.width, c.height) : new Dimension(c.height, c.width);
+    }
+
+    // Maps source pixel coordinates to edited image coordinates (crop, then rotate, then flip)
+    AffineTransform sourceToOutput(int srcW, int srcH) {
+        Rectangle c = cropBounds(srcW, srcH);
+        Dimension out = outputSize(srcW, srcH);
+
+        AffineTransform at = new AffineTransform();
+        if (flipH) {
+            at.translate(out.width, 0);
+            at.scale(-1, 1);
+        }
+        if (flipV) {
+            at.translate(0, out.height);
+            at.scale(1, -1);
+        }
+        switch (rotation) {
+            case 90: at.translate(c.height, 0); break;
+            case 180: at.translate(c.width, c.height); break;
+            case 270: at.translate(0, c.width); break;
+            default: break;
+        }
+        at.quadrantRotate(rotation / 90);
+        at.translate(-c.x, -c.y);
+        return at;
+    }
+
+    /**
+     * Materializes the edits for a raster decoded at the given subsampling of a
+     * srcW × srcH source. Allocates only the output image.
+     */
+    BufferedImage render(BufferedImage raster, int subsampling, int srcW, int srcH) {
+        if (isIdentity()) return raster;
+
+        long start = System.nanoTime();
+        Dimension out = outputSize(srcW, srcH);
+        int outW = Math.max(1, (out.width + subsampling - 1) / subsampling);
+        int outH = Math.max(1, (out.height + subsampling - 1) / subsampling);
+
+        AffineTransform at = AffineTransform.getScaleInstance(1.0 / subsampling, 1.0 / subsampling);
+        at.concatenate(sourceToOutput(srcW, srcH));
+        at.scale(subsampling, subsampling);
+
+        int type = raster.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage result = new BufferedImage(outW, outH, type);
+        Graphics2D g = result.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.drawImage(raster, at, null);
+        g.dispose();
+        Metrics.EDIT.recordSince(start);
+        return result;
+    }
+}
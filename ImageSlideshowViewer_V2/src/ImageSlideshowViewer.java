@@ -9,18 +9,22 @@ import java.awt.event.*;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.io.*;
-import java.net.URL;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import javax.imageio.ImageIO;
-import javax.imageio.ImageReader;
-import javax.imageio.metadata.IIOMetadata;
-import javax.imageio.stream.ImageInputStream;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
 import javax.sound.sampled.*;
 import java.io.File;
 import java.io.IOException;
@@ -33,16 +37,71 @@ import java.io.IOException;
 public class ImageSlideshowViewer extends JFrame {
     // Core components
     private ImagePanel imagePanel;
+    private ThumbnailBrowser filmstrip, grid;
+    private JScrollPane filmstripScroll;
+    private JPanel viewPanel; // Slide or grid, switched with a CardLayout
     private JPanel controlPanel, metadataPanel;
     private JLabel statusLabel, metadataLabel;
-    private JButton playBtn, prevBtn, nextBtn, fullscreenBtn, loadBtn, urlBtn;
+    private JButton playBtn, prevBtn, nextBtn, fullscreenBtn, loadBtn, urlBtn, gridBtn, filterBtn;
     private JSlider intervalSlider, zoomSlider;
     private JComboBox<String> transitionCombo;
+    private JCheckBox liveCheck, skipDuplicatesCheck, filmstripCheck;
+    private SwingWorker<?, ?> urlWorker; // Download in progress, if any
 
     // Image management
-    private List<ImageFile> imageFiles = new ArrayList<>();
-    private int currentIndex = 0;
-    private Map<String, BufferedImage> imageCache = new ConcurrentHashMap<>();
+    private static final Comparator<ImageFile> NAME_ORDER = (a, b) -> a.path.compareToIgnoreCase(b.path);
+    private final Playlist<ImageFile> playlist = new Playlist<>(NAME_ORDER, f -> f.path);
+    // Every file indexed, including those the query leaves out, so a new query needs no rescan
+    private final MetadataIndex<ImageFile> metadataIndex = new MetadataIndex<>(NAME_ORDER, f -> f.path);
+    private volatile MetadataIndex.Query query = initialQuery();
+    // A small heap tier for the slides in use in front of a large off-heap tier
+    private final ImageCache imageCache = ImageCache.withHeapPercent(
+            Integer.getInteger("slideshow.cache.percent", 10),
+            Long.getLong("slideshow.cache.offHeapMegabytes", Runtime.getRuntime().maxMemory() / 2 >> 20) << 20);
+    private final ThumbnailStore thumbnailStore = ThumbnailStore.open(new File(System.getProperty(
+            "slideshow.cache.dir", System.getProperty("user.home") + File.separator + ".slideshow-cache")));
+    private final UrlFetcher urlFetcher = new UrlFetcher(new File(System.getProperty(
+            "slideshow.cache.dir", System.getProperty("user.home") + File.separator + ".slideshow-cache"), "http"));
+    private final ExecutorService metadataExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "metadata-reader");
+        t.setDaemon(true);
+        return t;
+    });
+    private final DuplicateIndex duplicates = new DuplicateIndex();
+    private final Set<String> hashing = ConcurrentHashMap.newKeySet(); // Paths queued for hashing
+    private final ExecutorService hashExecutor = Executors.newFixedThreadPool(LOADER_THREADS, r -> {
+        Thread t = new Thread(r, "hash-indexer");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+    private volatile boolean skipDuplicates = false;
+    // Thumbnails at cell size for the filmstrip and grid; bounded, so memory is flat however long the playlist
+    private final ImageCache thumbnailCache = new ImageCache(Long.getLong("slideshow.thumbs.megabytes", 32) << 20);
+    private Playlist.Snapshot<ImageFile> browsed = playlist.snapshot(); // What the browsers show
+    private ImageFile browsedCurrent;
+    private boolean gridShown = false;
+    private final Prefetcher prefetcher =
+            new Prefetcher(Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1)));
+    private int direction = 1;
+    private int displayGeneration = 0;
+    private int shownGeneration = 0; // displayGeneration of the slide showImage last put up
+    private File liveFolder;
+    private FolderWatcher folderWatcher;
+
+    private static final long LIVE_QUIET_MILLIS = Long.getLong("slideshow.live.quietMillis", 1000);
+    private static final int QUERY_REFRESH_MILLIS = Integer.getInteger("slideshow.query.refreshMillis", 3_600_000);
+    private static final int LOADER_THREADS =
+            Integer.getInteger("slideshow.loaders", Runtime.getRuntime().availableProcessors());
+    private static final int URL_CONNECTIONS = Integer.getInteger("slideshow.url.connections", 4);
+    private static final int LOAD_BATCH = 256; // Files merged into the playlist per copy
+    private static final int DUPLICATE_DISTANCE = Integer.getInteger("slideshow.duplicates.distance", 6);
+    private static final int HASH_SIZE = 64; // Shortest side of the decode a hash is taken from
+    private static final int COARSE_FACTOR = 8; // Quick previews are built at 1/8 of the slide's raster size
+    private static final long COARSE_MIN_PIXELS = 1_000_000; // Smaller rasters decode fast enough as is
+    private static final int FILMSTRIP_CELL = 96, GRID_CELL = 160; // Thumbnail cell sizes in pixels
+    private static final long TILED_PIXELS =
+            Integer.getInteger("slideshow.tiled.megapixels", 16) * 1_000_000L;
 
     // Slideshow controls
     private Timer slideshowTimer;
@@ -57,11 +116,19 @@ public class ImageSlideshowViewer extends JFrame {
     private Point imageOffset = new Point(0, 0);
 
     // Editing state
-    private BufferedImage originalImage, editedImage;
-    private int rotation = 0;
-    private boolean flipH = false, flipV = false;
+    private BufferedImage originalImage;
+    private String shownPath; // Path of the slide originalImage belongs to
+    private int rasterSubsampling = 1; // Source pixels per raster pixel in originalImage
+    private TiledImage tiledImage; // Region-on-demand source for zoom levels finer than the raster
+    private GifAnimation animation; // Frame player for the current slide if it is an animated GIF
+    private int sourceWidth, sourceHeight; // Full-resolution size of the current slide
+    private final ImageEdits edits = new ImageEdits();
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--export")) {
+            System.exit(BatchExport.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+
         SwingUtilities.invokeLater(() -> {
             try {
                 UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -85,6 +152,38 @@ public class ImageSlideshowViewer extends JFrame {
         setupKeyBindings();
 
         slideshowTimer = new Timer(intervalSeconds * 1000, e -> nextImage());
+        // A days= window slides with the clock; re-apply it so old slides drop out of a long-running show
+        new Timer(QUERY_REFRESH_MILLIS, e -> {
+            if (query.isSliding()) applyQuery(query);
+        }).start();
+        playlist.reset(Collections.emptyList(), metadataIndex.comparator(query));
+        filterBtn.setText(query.isAll() ? "Filter" : "Filter*");
+        // Keys are path@mtime#..., and a file none of whose rasters are cached no longer needs its mapping
+        imageCache.setEvictionListener(key -> {
+            String path = key.substring(0, key.lastIndexOf('@'));
+            if (!imageCache.containsPrefix(path + "@")) MappedFiles.release(path);
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(thumbnailStore::close));
+
+        String metricsFile = System.getProperty("slideshow.metrics.file");
+        if (metricsFile != null) {
+            Metrics.startDump(new File(metricsFile), Integer.getInteger("slideshow.metrics.seconds", 10),
+                    this::metricGauges);
+        }
+    }
+
+    // Pipeline counters plus the cache and transition figures only the viewer knows
+    private Map<String, Long> metricGauges() {
+        Map<String, Long> gauges = Metrics.gauges();
+        gauges.put("cache_hits", imageCache.getHits());
+        gauges.put("cache_misses", imageCache.getMisses());
+        gauges.put("cache_evictions", imageCache.getEvictions());
+        gauges.put("raster_bytes", imageCache.getUsedBytes());
+        gauges.put("offheap_bytes", imageCache.getOffHeapBytes());
+        gauges.put("mapped_bytes", MappedFiles.getMappedBytes());
+        gauges.put("frames", imagePanel.transitions.getFrames());
+        gauges.put("dropped_frames", imagePanel.transitions.getDroppedFrames());
+        return gauges;
     }
 
     private void initComponents() {
@@ -93,13 +192,29 @@ public class ImageSlideshowViewer extends JFrame {
         imagePanel.setBackground(Color.BLACK);
         imagePanel.setPreferredSize(new Dimension(800, 500));
 
+        // Playlist browsers: a filmstrip under the slide and a grid in its place
+        int thumbLoaders = Math.max(1, LOADER_THREADS / 2);
+        filmstrip = new ThumbnailBrowser(thumbnailSource, false, FILMSTRIP_CELL, thumbnailCache, thumbLoaders);
+        grid = new ThumbnailBrowser(thumbnailSource, true, GRID_CELL, thumbnailCache, thumbLoaders);
+        filmstripScroll = new JScrollPane(filmstrip,
+                JScrollPane.VERTICAL_SCROLLBAR_NEVER, JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+
         // Control buttons
         loadBtn = new JButton("Load Folder");
         urlBtn = new JButton("Load URL");
+        filterBtn = new JButton("Filter");
+        filterBtn.setToolTipText("Play only the images matching a date, camera, size or shape filter, in any order");
+        liveCheck = new JCheckBox("Live");
+        liveCheck.setToolTipText("Watch the loaded folder for new, changed and deleted images");
+        skipDuplicatesCheck = new JCheckBox("Skip Duplicates");
+        skipDuplicatesCheck.setToolTipText("Show only the first of each group of near-identical images");
         prevBtn = new JButton("Previous");
         playBtn = new JButton("Play");
         nextBtn = new JButton("Next");
         fullscreenBtn = new JButton("Fullscreen");
+        gridBtn = new JButton("Grid");
+        gridBtn.setToolTipText("Browse the playlist as a grid of thumbnails (G)");
+        filmstripCheck = new JCheckBox("Filmstrip", true);
 
         // Sliders
         intervalSlider = new JSlider(1, 30, intervalSeconds);
@@ -112,7 +227,7 @@ public class ImageSlideshowViewer extends JFrame {
         zoomSlider.setPaintTicks(true);
 
         // Transition options
-        transitionCombo = new JComboBox<>(new String[]{"Fade", "Slide Left", "Slide Right"});
+        transitionCombo = new JComboBox<>(new String[]{"Fade", "Slide Left", "Slide Right", "Wipe"});
 
         // Status and metadata
         statusLabel = new JLabel("Ready - Load images to start");
@@ -131,12 +246,17 @@ public class ImageSlideshowViewer extends JFrame {
 
         // Control panel
         controlPanel.add(loadBtn);
+        controlPanel.add(liveCheck);
         controlPanel.add(urlBtn);
+        controlPanel.add(filterBtn);
         controlPanel.add(new JSeparator(SwingConstants.VERTICAL));
         controlPanel.add(prevBtn);
         controlPanel.add(playBtn);
         controlPanel.add(nextBtn);
+        controlPanel.add(skipDuplicatesCheck);
         controlPanel.add(fullscreenBtn);
+        controlPanel.add(gridBtn);
+        controlPanel.add(filmstripCheck);
         controlPanel.add(new JLabel(" Interval:"));
         controlPanel.add(intervalSlider);
         controlPanel.add(new JLabel(" Transition:"));
@@ -170,6 +290,7 @@ public class ImageSlideshowViewer extends JFrame {
 
         // Create a combined south panel for editing controls and status
         JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(filmstripScroll, BorderLayout.NORTH);
         southPanel.add(editPanel, BorderLayout.CENTER);
 
         JPanel statusPanel = new JPanel(new BorderLayout());
@@ -178,18 +299,43 @@ public class ImageSlideshowViewer extends JFrame {
 
         // Main layout
         add(controlPanel, BorderLayout.NORTH);
-        add(imagePanel, BorderLayout.CENTER);
+        JScrollPane gridScroll = new JScrollPane(grid,
+                JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED, JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+        gridScroll.getViewport().setBackground(grid.getBackground());
+        viewPanel = new JPanel(new CardLayout());
+        viewPanel.add(imagePanel, "slide");
+        viewPanel.add(gridScroll, "grid");
+
+        add(viewPanel, BorderLayout.CENTER);
         add(metadataPanel, BorderLayout.EAST);
         add(southPanel, BorderLayout.SOUTH);  // This was missing!
     }
 
     private void setupEventHandlers() {
         loadBtn.addActionListener(e -> loadFromFolder());
+        liveCheck.addActionListener(e -> {
+            if (liveCheck.isSelected()) {
+                startWatching();
+            } else {
+                stopWatching();
+            }
+        });
+        skipDuplicatesCheck.addActionListener(e -> {
+            skipDuplicates = skipDuplicatesCheck.isSelected();
+            indexHashes();
+            schedulePrefetch();
+        });
         urlBtn.addActionListener(e -> loadFromURL());
+        filterBtn.addActionListener(e -> editQuery());
         prevBtn.addActionListener(e -> previousImage());
         nextBtn.addActionListener(e -> nextImage());
         playBtn.addActionListener(e -> toggleSlideshow());
         fullscreenBtn.addActionListener(e -> toggleFullscreen());
+        gridBtn.addActionListener(e -> toggleGrid());
+        filmstripCheck.addActionListener(e -> {
+            filmstripScroll.setVisible(filmstripCheck.isSelected());
+            revalidate();
+        });
 
         intervalSlider.addChangeListener(e -> {
             intervalSeconds = intervalSlider.getValue();
@@ -200,6 +346,7 @@ public class ImageSlideshowViewer extends JFrame {
 
         zoomSlider.addChangeListener(e -> {
             zoomFactor = zoomSlider.getValue() / 100.0;
+            ensureResolution();
             imagePanel.repaint();
         });
 
@@ -258,7 +405,11 @@ public class ImageSlideshowViewer extends JFrame {
                     e.acceptDrop(DnDConstants.ACTION_COPY);
                     Transferable t = e.getTransferable();
                     List<File> files = (List<File>) t.getTransferData(DataFlavor.javaFileListFlavor);
-                    loadFiles(files);
+                    if (files.size() == 1 && files.get(0).isDirectory()) {
+                        loadFolder(files.get(0));
+                    } else {
+                        loadFiles(files);
+                    }
                     e.dropComplete(true);
                 } catch (Exception ex) {
                     showError("Drag & Drop Error", ex.getMessage());
@@ -282,6 +433,10 @@ public class ImageSlideshowViewer extends JFrame {
                 KeyStroke.getKeyStroke(KeyEvent.VK_F11, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
         root.registerKeyboardAction(e -> System.exit(0),
                 KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
+        root.registerKeyboardAction(e -> imagePanel.toggleOverlay(),
+                KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
+        root.registerKeyboardAction(e -> toggleGrid(),
+                KeyStroke.getKeyStroke(KeyEvent.VK_G, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
 
         // Zoom controls
         root.registerKeyboardAction(e -> zoomIn(),
@@ -331,157 +486,654 @@ public class ImageSlideshowViewer extends JFrame {
         JFileChooser chooser = new JFileChooser();
         chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
         if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            File folder = chooser.getSelectedFile();
-            SwingWorker<Void, Void> worker = new SwingWorker<>() {
-                @Override
-                protected Void doInBackground() throws Exception {
-                    loadImagesFromFolder(folder);
-                    return null;
-                }
-                @Override
-                protected void done() {
-                    if (!imageFiles.isEmpty()) {
-                        currentIndex = 0;
-                        displayCurrentImage();
-                    }
-                }
-            };
-            worker.execute();
+            loadFolder(chooser.getSelectedFile());
+        }
+    }
+
+    // Loads a folder and makes it the one Live mode watches
+    private void loadFolder(File folder) {
+        liveFolder = folder;
+        loadFiles(Collections.singletonList(folder));
+        if (liveCheck.isSelected()) {
+            startWatching();
+        }
+    }
+
+    // Live mode: apply changes in the loaded folder to the playlist as they happen
+    private void startWatching() {
+        stopWatching();
+        if (liveFolder == null) {
+            liveCheck.setSelected(false);
+            statusLabel.setText("Live mode needs a folder - load or drop one first");
+            return;
+        }
+
+        try {
+            folderWatcher = new FolderWatcher(liveFolder.toPath(), p -> isImageFile(p.toFile()),
+                    new FolderWatcher.Listener() {
+                        @Override
+                        public void upserted(Path file) {
+                            try {
+                                ImageFile imgFile = ImageFile.index(file, thumbnailStore);
+                                if (imgFile == null) return;
+                                if (catalog(imgFile)) {
+                                    playlist.upsert(imgFile);
+                                    indexHash(imgFile);
+                                    SwingUtilities.invokeLater(() -> liveUpserted(imgFile));
+                                } else if (playlist.removeIf(f -> f.path.equals(imgFile.path)) > 0) {
+                                    // Edited so that it no longer matches the query
+                                    SwingUtilities.invokeLater(() -> playlistChanged());
+                                }
+                            } catch (IOException e) {
+                                System.err.println("Failed to index: " + file.getFileName());
+                            }
+                        }
+
+                        @Override
+                        public void deleted(Path path) {
+                            SwingUtilities.invokeLater(() -> removeImageFiles(path.toString()));
+                        }
+
+                        @Override
+                        public void overflowed() {
+                            // Too many events to replay; re-index the folder and merge
+                            SwingUtilities.invokeLater(() -> loadFiles(Collections.singletonList(liveFolder)));
+                        }
+                    }, LIVE_QUIET_MILLIS);
+            folderWatcher.start();
+        } catch (IOException e) {
+            showError("Live Mode Error", "Failed to watch folder: " + e.getMessage());
+            liveCheck.setSelected(false);
+        }
+    }
+
+    private void stopWatching() {
+        if (folderWatcher != null) {
+            folderWatcher.close();
+            folderWatcher = null;
+        }
+    }
+
+    private void liveUpserted(ImageFile imgFile) {
+        // Redisplay if the changed file is on screen, or if it is the first one
+        if (playlist.current() == imgFile && (originalImage == null || imgFile.path.equals(shownPath))) {
+            displayCurrentImage();
+        } else {
+            updateStatus();
+        }
+    }
+
+    // Query from -Dslideshow.query, for kiosks that start filtered
+    private static MetadataIndex.Query initialQuery() {
+        try {
+            return MetadataIndex.Query.parse(System.getProperty("slideshow.query", ""));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ignoring slideshow.query: " + e.getMessage());
+            return MetadataIndex.Query.ALL;
+        }
+    }
+
+    // Adds the file to the metadata index; returns whether the active query lets it play
+    private boolean catalog(ImageFile imgFile) {
+        ExifReader.Tags tags = imgFile.exif(thumbnailStore);
+        long captured = tags.captureTime(); // Files without an EXIF date count from their mtime
+        metadataIndex.put(imgFile, captured >= 0 ? captured : imgFile.lastModified, imgFile.size,
+                imgFile.width, imgFile.height, tags.make, tags.model);
+        return metadataIndex.matches(imgFile, query);
+    }
+
+    private void editQuery() {
+        String input = (String) JOptionPane.showInputDialog(this,
+                "Filter and sort, e.g. days=7; camera=canon r5; orientation=landscape; sort=-date\n"
+                        + "Also: from=/to=yyyy-MM-dd, minwidth=, minheight=, minsize=/maxsize= (MB).\n"
+                        + "Sort by name, date, size, width, height or camera. Empty shows everything:",
+                "Filter", JOptionPane.QUESTION_MESSAGE, null, null, query.spec);
+        if (input == null) return;
+        try {
+            applyQuery(MetadataIndex.Query.parse(input));
+        } catch (IllegalArgumentException e) {
+            showError("Filter Error", e.getMessage());
+        }
+    }
+
+    // Rebuilds the playlist from the index, staying on the current slide if it still matches.
+    // The days= window is counted back from now each time
+    private void applyQuery(MetadataIndex.Query q) {
+        q = q.at(System.currentTimeMillis());
+        query = q;
+        playlist.reset(metadataIndex.query(q), metadataIndex.comparator(q));
+        indexHashes(); // Files the query brings in were never hashed
+        filterBtn.setText(q.isAll() ? "Filter" : "Filter*");
+        playlistChanged();
+    }
+
+    // Redisplays if the slide on screen has left the playlist, otherwise refreshes the status
+    private void playlistChanged() {
+        ImageFile current = playlist.current();
+        if (current == null) {
+            showEmpty();
+        } else if (!current.path.equals(shownPath)) {
+            displayCurrentImage();
+        } else {
+            updateStatus();
+        }
+    }
+
+    private void showEmpty() {
+        stopAnimation();
+        originalImage = null;
+        shownPath = null;
+        imagePanel.repaint();
+        refreshBrowsers();
+        statusLabel.setText(metadataIndex.size() > 0 ? "No images match the filter" : "Ready - Load images to start");
+    }
+
+    // Removes the file at path, or every file below it when path was a folder
+    private void removeImageFiles(String path) {
+        String folderPrefix = path + File.separator;
+        ImageFile before = playlist.current();
+        metadataIndex.removeIf(p -> p.equals(path) || p.startsWith(folderPrefix));
+        if (playlist.removeIf(f -> f.path.equals(path) || f.path.startsWith(folderPrefix)) == 0) return;
+        duplicates.removeIf(p -> p.equals(path) || p.startsWith(folderPrefix));
+        MappedFiles.release(path);
+
+        if (playlist.isEmpty()) {
+            showEmpty();
+        } else if (playlist.current() != before) {
+            displayCurrentImage();
+        } else {
+            updateStatus();
         }
     }
 
+    // Downloads the given URLs (or the URLs listed in .txt manifests) concurrently into the
+    // disk cache and adds them to the playlist; pressing the button again cancels
     private void loadFromURL() {
-        String url = JOptionPane.showInputDialog(this, "Enter image URL:", "Load from URL",
+        if (urlWorker != null) {
+            urlWorker.cancel(true);
+            return;
+        }
+
+        String input = JOptionPane.showInputDialog(this,
+                "Enter image URLs separated by spaces, or the URL of a .txt list:", "Load from URL",
                 JOptionPane.QUESTION_MESSAGE);
-        if (url != null && !url.trim().isEmpty()) {
-            SwingWorker<BufferedImage, Void> worker = new SwingWorker<>() {
-                @Override
-                protected BufferedImage doInBackground() throws Exception {
-                    return ImageIO.read(new URL(url.trim()));
-                }
-                @Override
-                protected void done() {
+        if (input == null || input.trim().isEmpty()) return;
+        List<String> requested = Arrays.asList(input.trim().split("\\s+"));
+
+        SwingWorker<List<String>, ImageFile> worker = new SwingWorker<>() {
+            private volatile int total, finished;
+            private boolean shown = false;
+
+            {
+                addPropertyChangeListener(e -> {
+                    if ("progress".equals(e.getPropertyName()) && !isDone()) {
+                        showDownloadStatus(finished, total, (Integer) e.getNewValue());
+                    }
+                });
+            }
+
+            @Override
+            protected List<String> doInBackground() throws Exception {
+                List<String> failures = new ArrayList<>();
+                List<String> urls = new ArrayList<>();
+                for (String url : requested) {
                     try {
-                        BufferedImage img = get();
-                        if (img != null) {
-                            imageFiles.clear();
-                            imageFiles.add(new ImageFile(url, img));
-                            currentIndex = 0;
-                            displayCurrentImage();
+                        if (UrlFetcher.isManifest(url)) {
+                            urls.addAll(urlFetcher.readManifest(url));
+                        } else {
+                            urls.add(url);
                         }
-                    } catch (Exception e) {
-                        showError("URL Load Error", "Failed to load image from URL: " + e.getMessage());
+                    } catch (IOException e) {
+                        failures.add(url + ": " + e.getMessage());
                     }
                 }
-            };
-            worker.execute();
-        }
-    }
+                total = urls.size();
 
-    private void loadFiles(List<File> files) {
-        SwingWorker<Void, Void> worker = new SwingWorker<>() {
-            @Override
-            protected Void doInBackground() throws Exception {
-                for (File file : files) {
-                    if (file.isDirectory()) {
-                        loadImagesFromFolder(file);
-                    } else if (isImageFile(file)) {
+                double[] fractions = new double[urls.size()];
+                ExecutorService pool = Executors.newFixedThreadPool(URL_CONNECTIONS);
+                try {
+                    CompletionService<ImageFile> downloads = new ExecutorCompletionService<>(pool);
+                    for (int i = 0; i < urls.size(); i++) {
+                        int slot = i;
+                        downloads.submit(() -> {
+                            Path file = urlFetcher.fetch(urls.get(slot), (bytes, length) -> {
+                                synchronized (fractions) {
+                                    // Servers may send more than their Content-Length
+                                    fractions[slot] = length > 0 ? Math.min(1.0, (double) bytes / length) : 0;
+                                    double sum = 0;
+                                    for (double f : fractions) sum += f;
+                                    setProgress((int) (100 * sum / fractions.length));
+                                }
+                            });
+                            ImageFile imgFile = ImageFile.index(file, thumbnailStore);
+                            if (imgFile == null) throw new IOException("Not an image");
+                            return imgFile;
+                        });
+                    }
+
+                    for (int i = 0; i < urls.size(); i++) {
+                        Future<ImageFile> result = downloads.take();
+                        finished++;
                         try {
-                            BufferedImage img = ImageIO.read(file);
-                            if (img != null) {
-                                imageFiles.add(new ImageFile(file.getAbsolutePath(), img));
+                            ImageFile imgFile = result.get();
+                            if (catalog(imgFile)) {
+                                playlist.upsert(imgFile);
+                                indexHash(imgFile);
                             }
-                        } catch (Exception e) {
-                            System.err.println("Failed to load: " + file.getName());
+                            publish(imgFile);
+                        } catch (ExecutionException e) {
+                            failures.add(e.getCause().getMessage());
                         }
                     }
+                } finally {
+                    pool.shutdownNow(); // Interrupts downloads still running after a cancel
+                    thumbnailStore.flush();
                 }
-                return null;
+                return failures;
+            }
+
+            @Override
+            protected void process(List<ImageFile> chunk) {
+                if (!shown) {
+                    // Jump to the first image that arrived
+                    shown = true;
+                    Playlist.Snapshot<ImageFile> s = playlist.snapshot();
+                    for (int i = 0; i < s.size(); i++) {
+                        if (s.get(i) == chunk.get(0)) {
+                            playlist.setCurrent(i);
+                            break;
+                        }
+                    }
+                    displayCurrentImage();
+                } else {
+                    refreshBrowsers();
+                }
+                showDownloadStatus(finished, total, getProgress());
             }
+
             @Override
             protected void done() {
-                if (!imageFiles.isEmpty()) {
-                    currentIndex = 0;
-                    displayCurrentImage();
+                urlWorker = null;
+                urlBtn.setText("Load URL");
+                try {
+                    List<String> failures = get();
+                    if (!failures.isEmpty()) {
+                        showError("URL Load Error", "Failed to load " + failures.size() + " URL(s):\n"
+                                + String.join("\n", failures.subList(0, Math.min(10, failures.size()))));
+                    }
+                } catch (CancellationException e) {
+                    statusLabel.setText("Download cancelled");
+                    return;
+                } catch (Exception e) {
+                    showError("URL Load Error", "Failed to load images from URL: " + e.getMessage());
+                }
+                if (!playlist.isEmpty()) {
+                    updateStatus();
                 }
             }
         };
+        urlWorker = worker;
+        urlBtn.setText("Cancel");
+        statusLabel.setText("Connecting...");
         worker.execute();
     }
 
-    private void loadImagesFromFolder(File folder) {
-        try {
-            Files.walk(folder.toPath())
-                    .filter(Files::isRegularFile)
-                    .filter(p -> isImageFile(p.toFile()))
-                    .forEach(path -> {
+    private void showDownloadStatus(int finished, int total, int percent) {
+        statusLabel.setText(String.format("Downloaded %d of %d - %d%%", finished, total, percent));
+    }
+
+    // Indexes files on a bounded pool, merging them into the playlist in path-order batches
+    private void loadFiles(List<File> files) {
+        SwingWorker<Void, Integer> worker = new SwingWorker<>() {
+            private boolean shown = false;
+
+            @Override
+            protected Void doInBackground() throws Exception {
+                List<Path> paths = collectImagePaths(files);
+                ExecutorService pool = Executors.newFixedThreadPool(LOADER_THREADS);
+                try {
+                    List<Future<ImageFile>> results = new ArrayList<>(paths.size());
+                    for (Path path : paths) {
+                        results.add(pool.submit(() -> ImageFile.index(path, thumbnailStore)));
+                    }
+
+                    // Collect in submission order so the first slide is the first in sort order;
+                    // the first batch is a single file so it can be shown without waiting
+                    List<ImageFile> batch = new ArrayList<>();
+                    int batchSize = 1;
+                    for (int i = 0; i < results.size() && !isCancelled(); i++) {
                         try {
-                            BufferedImage img = ImageIO.read(path.toFile());
-                            if (img != null) {
-                                imageFiles.add(new ImageFile(path.toString(), img));
+                            ImageFile imgFile = results.get(i).get();
+                            if (imgFile != null && catalog(imgFile)) {
+                                batch.add(imgFile);
                             }
-                        } catch (Exception e) {
-                            System.err.println("Failed to load: " + path.getFileName());
+                        } catch (ExecutionException e) {
+                            System.err.println("Failed to index: " + paths.get(i).getFileName());
                         }
-                    });
+                        if (batch.size() >= batchSize || i == results.size() - 1) {
+                            playlist.upsertAll(batch);
+                            batch.forEach(ImageSlideshowViewer.this::indexHash);
+                            publish(batch.size());
+                            batch.clear();
+                            batchSize = LOAD_BATCH;
+                        }
+                    }
+                } finally {
+                    pool.shutdownNow();
+                }
+                return null;
+            }
 
-            imageFiles.sort((a, b) -> a.path.compareToIgnoreCase(b.path));
+            @Override
+            protected void process(List<Integer> counts) {
+                if (playlist.isEmpty()) return;
 
-        } catch (Exception e) {
-            showError("Folder Load Error", "Failed to load images from folder: " + e.getMessage());
+                if (!shown) {
+                    shown = true;
+                    playlist.setCurrent(0);
+                    displayCurrentImage();
+                } else {
+                    Playlist.Snapshot<ImageFile> s = playlist.snapshot();
+                    statusLabel.setText(String.format("Image %d of %d - loading...", s.current + 1, s.size()));
+                    refreshBrowsers();
+                }
+            }
+
+            @Override
+            protected void done() {
+                thumbnailStore.flush();
+                if (shown) {
+                    updateStatus();
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    private List<Path> collectImagePaths(List<File> files) {
+        List<Path> paths = new ArrayList<>();
+        for (File file : files) {
+            if (file.isDirectory()) {
+                try (Stream<Path> walk = Files.walk(file.toPath())) {
+                    walk.filter(Files::isRegularFile)
+                            .filter(p -> isImageFile(p.toFile()))
+                            .forEach(paths::add);
+                } catch (Exception e) {
+                    showError("Folder Load Error", "Failed to load images from folder: " + e.getMessage());
+                }
+            } else if (isImageFile(file)) {
+                paths.add(file.toPath().toAbsolutePath());
+            }
         }
+        paths.sort((a, b) -> a.toString().compareToIgnoreCase(b.toString()));
+        return paths;
     }
 
-    private boolean isImageFile(File file) {
+    static boolean isImageFile(File file) {
         String name = file.getName().toLowerCase();
         return name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png") ||
                 name.endsWith(".gif") || name.endsWith(".bmp") || name.endsWith(".tiff");
     }
 
     private void displayCurrentImage() {
-        if (imageFiles.isEmpty()) return;
+        ImageFile imgFile = playlist.current();
+        if (imgFile == null) return;
+
+        stopAnimation();
+        refreshBrowsers();
+        int generation = ++displayGeneration;
+        int subsampling = displaySubsampling(imgFile);
+        long start = System.nanoTime();
+
+        BufferedImage ready = cachedImage(imgFile, subsampling);
+        if (ready != null) {
+            showImage(imgFile, ready, subsampling);
+            Metrics.FIRST.recordSince(start);
+            slideReady(imgFile, generation, start);
+        } else {
+            // Put up something coarse right away and refine it in place: the stored preview or
+            // a JPEG's EXIF thumbnail, then the passes of a progressive file, then the full raster
+            ThumbnailStore.Entry entry = thumbnailStore.lookup(imgFile.path, imgFile.lastModified, imgFile.size);
+            BufferedImage preview = entry != null && entry.previewSubsampling > subsampling
+                    ? thumbnailStore.readPreview(entry) : null;
+            if (preview != null) {
+                showImage(imgFile, preview, entry.previewSubsampling);
+                Metrics.FIRST.recordSince(start);
+            } else {
+                statusLabel.setText("Loading " + Paths.get(imgFile.path).getFileName() + "...");
+            }
+
+            ImageDecoder.PassListener passes = (img, s) ->
+                    SwingUtilities.invokeLater(() -> showCoarse(imgFile, generation, img, s, start));
+            int coarse = Math.min(64, subsampling * COARSE_FACTOR);
+            if (preview == null && (long) imgFile.width * imgFile.height / ((long) subsampling * subsampling)
+                    >= COARSE_MIN_PIXELS) {
+                // Only the thumbnail is cheap: a subsampled decode costs nearly as much as the full one
+                File source = new File(imgFile.path);
+                prefetcher.request(coarseKey(imgFile, subsampling), () -> ImageDecoder.isProgressive(source) ? null
+                        : ImageDecoder.quickPreview(source, imgFile.width, imgFile.height, coarse))
+                        .thenAccept(img -> passes.pass(img, coarse));
+            }
+
+            prefetcher.request(imgFile.cacheKey(subsampling), () -> loadImage(imgFile, subsampling, passes))
+                    .thenAccept(img -> SwingUtilities.invokeLater(() -> {
+                        // Ignore results for slides the user has already moved past
+                        if (generation != displayGeneration) return;
+                        if (img != null && shownGeneration == generation) {
+                            replaceRaster(img, subsampling, true);
+                            slideReady(imgFile, generation, start);
+                        } else if (img != null) {
+                            showImage(imgFile, img, subsampling);
+                            Metrics.FIRST.recordSince(start);
+                            slideReady(imgFile, generation, start);
+                        } else {
+                            statusLabel.setText("Failed to decode " + Paths.get(imgFile.path).getFileName());
+                        }
+                    }));
+        }
+
+        schedulePrefetch();
+    }
+
+    // Prefetcher key of the quick preview decode for a slide shown at the given subsampling
+    private static String coarseKey(ImageFile imgFile, int subsampling) {
+        return imgFile.cacheKey(Math.min(64, subsampling * COARSE_FACTOR)) + "#coarse";
+    }
+
+    // A coarse raster of the slide being loaded: put it up, or swap it in if finer than what is up
+    private void showCoarse(ImageFile imgFile, int generation, BufferedImage img, int subsampling, long start) {
+        if (generation != displayGeneration || img == null) return;
+        if (shownGeneration == generation) {
+            replaceRaster(img, subsampling, false);
+        } else {
+            showImage(imgFile, img, subsampling);
+            Metrics.FIRST.recordSince(start);
+        }
+    }
+
+    // The final raster is on screen: record the latency and start animated GIFs
+    private void slideReady(ImageFile imgFile, int generation, long start) {
+        Metrics.SLIDE.recordSince(start);
+        if (!GifAnimation.isGif(imgFile.path)) return;
+
+        animation = new GifAnimation(new File(imgFile.path), frame -> {
+            if (generation != displayGeneration) return;
+            // Frames are full logical-screen rasters, reused from a small ring
+            originalImage = frame;
+            rasterSubsampling = 1;
+            sourceWidth = frame.getWidth();
+            sourceHeight = frame.getHeight();
+            imagePanel.slidePainter.invalidate();
+            imagePanel.repaint();
+        });
+        animation.start();
+    }
 
-        ImageFile imgFile = imageFiles.get(currentIndex);
-        originalImage = imgFile.image;
+    private void stopAnimation() {
+        if (animation != null) {
+            animation.close();
+            animation = null;
+        }
+    }
+
+    private void showImage(ImageFile imgFile, BufferedImage img, int subsampling) {
+        // Capture what is on screen now, including a transition still in flight
+        BufferedImage outgoing = imagePanel.snapshot();
+        imagePanel.transitions.cancel();
+
+        originalImage = img;
+        shownPath = imgFile.path;
+        shownGeneration = displayGeneration;
+        rasterSubsampling = subsampling;
+        sourceWidth = imgFile.width;
+        sourceHeight = imgFile.height;
+        tiledImage = new TiledImage(new File(imgFile.path),
+                imgFile.sourceKey(), imgFile.width, imgFile.height, imageCache, prefetcher);
         resetEditingState();
-        applyEdits();
 
         updateMetadata(imgFile);
-        statusLabel.setText(String.format("Image %d of %d - %s",
-                currentIndex + 1, imageFiles.size(),
-                Paths.get(imgFile.path).getFileName().toString()));
+        updateStatus();
 
-        if (transitionType.equals("Fade")) {
-            fadeTransition();
+        BufferedImage incoming = imagePanel.snapshot();
+        if (outgoing != null && incoming != null) {
+            imagePanel.transitions.start(transitionType, outgoing, incoming);
         } else {
-            slideTransition();
+            imagePanel.repaint();
         }
     }
 
-    private void fadeTransition() {
-        Timer fadeTimer = new Timer(20, null);
-        final float[] alpha = {0.0f};
+    private void updateStatus() {
+        refreshBrowsers();
+        Playlist.Snapshot<ImageFile> s = playlist.snapshot();
+        if (s.isEmpty()) return;
+        statusLabel.setText(String.format("Image %d of %d - %s",
+                s.current + 1, s.size(), Paths.get(s.current().path).getFileName().toString()));
+        statusLabel.setToolTipText("<html>" + imageCache.stats() + "<br>" + imagePanel.transitions.stats() + "</html>");
+    }
 
-        fadeTimer.addActionListener(e -> {
-            alpha[0] += 0.1f;
-            if (alpha[0] >= 1.0f) {
-                alpha[0] = 1.0f;
-                fadeTimer.stop();
+    // Decodes the next few slides in the playback direction plus one behind
+    private void schedulePrefetch() {
+        Playlist.Snapshot<ImageFile> s = playlist.snapshot();
+        int size = s.size();
+        if (size == 0) return;
+        int ahead = Math.min(prefetchDepth(), size - 1);
+
+        // Slides that will be skipped as near-duplicates are not worth decoding
+        List<ImageFile> window = new ArrayList<>();
+        for (int i = 1; i < size && window.size() < ahead; i++) {
+            ImageFile next = s.get(Math.floorMod(s.current + i * direction, size));
+            if (!skipDuplicates || !isNearDuplicate(s, next)) {
+                window.add(next);
             }
-            imagePanel.setAlpha(alpha[0]);
-            imagePanel.repaint();
-        });
+        }
+        if (size > 2) {
+            window.add(s.get(Math.floorMod(s.current - direction, size)));
+        }
+
+        ImageFile current = s.current();
+        Set<String> keys = new HashSet<>();
+        keys.add(current.cacheKey(displaySubsampling(current)));
+        keys.add(coarseKey(current, displaySubsampling(current)));
+        for (ImageFile imgFile : window) {
+            keys.add(imgFile.cacheKey(displaySubsampling(imgFile)));
+        }
+        prefetcher.retainOnly(keys);
+
+        for (ImageFile imgFile : window) {
+            int subsampling = displaySubsampling(imgFile);
+            if (!imageCache.contains(imgFile.cacheKey(subsampling))) {
+                prefetcher.request(imgFile.cacheKey(subsampling), () -> loadImage(imgFile, subsampling));
+            }
+        }
+    }
 
-        fadeTimer.start();
+    // Short intervals leave less time per decode, so look further ahead
+    private int prefetchDepth() {
+        if (!isPlaying) return 2;
+        if (intervalSeconds <= 2) return 4;
+        return intervalSeconds <= 5 ? 3 : 2;
     }
 
-    private void slideTransition() {
-        // Simple slide transition by resetting position
-        imageOffset = new Point(0, 0);
-        imagePanel.setAlpha(1.0f);
+    private BufferedImage cachedImage(ImageFile imgFile, int subsampling) {
+        // Check first so that only loadImage records the miss
+        String key = imgFile.cacheKey(subsampling);
+        return imageCache.contains(key) ? imageCache.get(key) : null;
+    }
+
+    // Zoom that fits the whole image in the panel, never enlarging it
+    private double fitZoom(ImageFile imgFile) {
+        int panelW = imagePanel.getWidth() > 0 ? imagePanel.getWidth() : imagePanel.getPreferredSize().width;
+        int panelH = imagePanel.getHeight() > 0 ? imagePanel.getHeight() : imagePanel.getPreferredSize().height;
+        double fit = Math.min((double) panelW / imgFile.width, (double) panelH / imgFile.height);
+        return Math.max(0.1, Math.min(1.0, fit));
+    }
+
+    private int displaySubsampling(ImageFile imgFile) {
+        return ImageDecoder.subsamplingFor(fitZoom(imgFile));
+    }
+
+    // Huge images are zoomed through visible tiles instead of one finer full raster
+    private boolean useTiles() {
+        if (tiledImage == null) return false;
+
+        int needed = ImageDecoder.subsamplingFor(zoomFactor);
+        return needed < rasterSubsampling
+                && (long) (sourceWidth / needed) * (sourceHeight / needed) > TILED_PIXELS;
+    }
+
+    // Decodes a finer raster once zooming in needs more pixels than the current one has
+    private void ensureResolution() {
+        ImageFile imgFile = playlist.current();
+        if (imgFile == null || originalImage == null) return;
+
+        int needed = ImageDecoder.subsamplingFor(zoomFactor);
+        if (needed >= rasterSubsampling || useTiles()) return;
+
+        int generation = displayGeneration;
+        prefetcher.request(imgFile.cacheKey(needed), () -> loadImage(imgFile, needed))
+                .thenAccept(img -> SwingUtilities.invokeLater(() -> {
+                    if (generation == displayGeneration && img != null) {
+                        replaceRaster(img, needed, true);
+                    }
+                }));
+    }
+
+    /**
+     * Swaps in a finer raster of the slide already on screen, keeping edits, zoom and pan.
+     * A complete raster also replaces a partial one (an early progressive pass) of the
+     * same resolution. A transition in flight carries on with the sharper slide.
+     */
+    private void replaceRaster(BufferedImage img, int subsampling, boolean complete) {
+        if (subsampling > rasterSubsampling || (subsampling == rasterSubsampling && !complete)) return;
+        originalImage = img;
+        rasterSubsampling = subsampling;
+        if (imagePanel.transitions.isActive()) {
+            BufferedImage incoming = imagePanel.slideSnapshot();
+            if (incoming != null) {
+                imagePanel.transitions.replaceIncoming(incoming);
+            }
+        }
         imagePanel.repaint();
     }
 
+    // Decoded rasters go through the bounded cache instead of being pinned by each ImageFile
+    private BufferedImage loadImage(ImageFile imgFile, int subsampling) {
+        return loadImage(imgFile, subsampling, null);
+    }
+
+    private BufferedImage loadImage(ImageFile imgFile, int subsampling, ImageDecoder.PassListener passes) {
+        String key = imgFile.cacheKey(subsampling);
+        BufferedImage img = imageCache.get(key);
+        if (img == null) {
+            img = imgFile.decode(subsampling, passes);
+            if (img != null) {
+                imageCache.put(key, img);
+                thumbnailStore.putPreview(imgFile.path, imgFile.lastModified, imgFile.size, img, subsampling);
+            }
+        }
+        return img;
+    }
+
     private void updateMetadata(ImageFile imgFile) {
         StringBuilder meta = new StringBuilder("<html><body style='width: 180px'>");
 
@@ -490,21 +1142,24 @@ public class ImageSlideshowViewer extends JFrame {
             File file = imgFile.path.startsWith("http") ? null : new File(imgFile.path);
             meta.append("<b>File:</b><br>").append(Paths.get(imgFile.path).getFileName().toString()).append("<br><br>");
 
-            if (originalImage != null) {
+            if (imgFile.width > 0) {
                 meta.append("<b>Dimensions:</b><br>")
-                        .append(originalImage.getWidth()).append(" × ").append(originalImage.getHeight()).append("<br><br>");
+                        .append(imgFile.width).append(" × ").append(imgFile.height).append("<br><br>");
             }
 
-            if (file != null && file.exists()) {
-                meta.append("<b>Size:</b><br>").append(formatFileSize(file.length())).append("<br><br>");
+            if (file != null && imgFile.size >= 0) {
+                meta.append("<b>Size:</b><br>").append(formatFileSize(imgFile.size)).append("<br><br>");
                 meta.append("<b>Modified:</b><br>")
-                        .append(new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date(file.lastModified())))
+                        .append(new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date(imgFile.lastModified)))
                         .append("<br><br>");
 
-                // EXIF data
-                String exif = extractExifData(file);
-                if (!exif.isEmpty()) {
-                    meta.append("<b>EXIF:</b><br>").append(exif);
+                // EXIF data, read off the EDT once per file
+                ExifReader.Tags exif = imgFile.exif;
+                if (exif != null) {
+                    meta.append("<b>EXIF:</b><br>").append(exif.toHtml());
+                } else {
+                    meta.append("<b>EXIF:</b><br>Reading...");
+                    readExif(imgFile);
                 }
             }
 
@@ -516,71 +1171,180 @@ public class ImageSlideshowViewer extends JFrame {
         metadataLabel.setText(meta.toString());
     }
 
-    private String extractExifData(File file) {
-        StringBuilder exif = new StringBuilder();
-        try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
-            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+    private void readExif(ImageFile imgFile) {
+        metadataExecutor.execute(() -> {
+            imgFile.exif(thumbnailStore);
+            SwingUtilities.invokeLater(() -> {
+                if (playlist.current() == imgFile) {
+                    updateMetadata(imgFile);
+                }
+            });
+        });
+    }
 
-            if (readers.hasNext()) {
-                ImageReader reader = readers.next();
-                reader.setInput(iis);
-                IIOMetadata metadata = reader.getImageMetadata(0);
+    private String formatFileSize(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
 
-                if (metadata != null) {
-                    String[] names = metadata.getMetadataFormatNames();
-                    for (String name : names) {
-                        displayMetadata(metadata.getAsTree(name), exif, 0);
-                    }
-                }
-                reader.dispose();
-            }
-        } catch (Exception e) {
-            // EXIF extraction failed - common for many images
+    private void previousImage() {
+        if (playlist.isEmpty()) return;
+        direction = -1;
+        step(-1);
+        displayCurrentImage();
+    }
+
+    private void nextImage() {
+        if (playlist.isEmpty()) return;
+        direction = 1;
+        step(1);
+        displayCurrentImage();
+    }
+
+    // Moves one slide, then on past any near-duplicates when skipping them
+    private void step(int delta) {
+        playlist.step(delta);
+        for (int i = playlist.size(); skipDuplicates && i > 1; i--) {
+            Playlist.Snapshot<ImageFile> s = playlist.snapshot();
+            if (!isNearDuplicate(s, s.current())) break;
+            playlist.step(delta);
+        }
+    }
+
+    // Whether a slide shown earlier in the playlist's order looks the same, so this one would
+    // be a repeat. The first of each group always plays, whichever way and wherever playback
+    // starts. Only slides in the playlist count, so a group the query thins never loses its first
+    private boolean isNearDuplicate(Playlist.Snapshot<ImageFile> s, ImageFile imgFile) {
+        Long hash = imgFile.hash;
+        if (hash == null) return false;
+        int position = playlist.indexOf(s, imgFile.path);
+        if (position < 0) return false;
+        for (String other : duplicates.near(hash, DUPLICATE_DISTANCE)) {
+            int before = playlist.indexOf(s, other);
+            if (before >= 0 && before < position) return true;
         }
+        return false;
+    }
 
-        return exif.length() > 0 ? exif.toString() : "No EXIF data available";
+    // Hashes every slide in the playlist, when duplicates are being skipped
+    private void indexHashes() {
+        if (!skipDuplicates) return;
+        Playlist.Snapshot<ImageFile> s = playlist.snapshot();
+        for (int i = 0; i < s.size(); i++) {
+            indexHash(s.get(i));
+        }
     }
 
-    private void displayMetadata(Node node, StringBuilder sb, int level) {
-        if (level > 3 || sb.length() > 500) return; // Limit depth and length
+    // Adds the file's perceptual hash to the duplicate index, computing it in the
+    // background when it is not cached and duplicates are being skipped
+    private void indexHash(ImageFile imgFile) {
+        Long hash = imgFile.hash;
+        if (hash != null) {
+            duplicates.put(imgFile.path, hash);
+            return;
+        }
+        if (!skipDuplicates || !hashing.add(imgFile.path)) return;
 
-        NamedNodeMap map = node.getAttributes();
-        if (map != null) {
-            for (int i = 0; i < Math.min(map.getLength(), 5); i++) {
-                Node attr = map.item(i);
-                if (attr.getNodeName().contains("DateTime") ||
-                        attr.getNodeName().contains("Model") ||
-                        attr.getNodeName().contains("Make")) {
-                    sb.append(attr.getNodeName()).append(": ").append(attr.getNodeValue()).append("<br>");
+        hashExecutor.execute(() -> {
+            try {
+                Long computed = imgFile.perceptualHash(thumbnailStore);
+                if (computed != null) {
+                    duplicates.put(imgFile.path, computed);
+                }
+            } finally {
+                hashing.remove(imgFile.path);
+                if (hashing.isEmpty()) {
+                    thumbnailStore.flush();
                 }
             }
+        });
+    }
+
+    // The browsers read one snapshot between refreshes, so a paint sees a consistent playlist
+    private final ThumbnailBrowser.Source thumbnailSource = new ThumbnailBrowser.Source() {
+        @Override
+        public int size() {
+            return browsed.size();
         }
 
-        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
-            displayMetadata(child, sb, level + 1);
+        @Override
+        public int current() {
+            return browsed.isEmpty() ? -1 : browsed.current;
         }
-    }
 
-    private String formatFileSize(long bytes) {
-        if (bytes < 1024) return bytes + " B";
-        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
-        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+        @Override
+        public String key(int index) {
+            return browsed.get(index).sourceKey();
+        }
+
+        @Override
+        public Supplier<BufferedImage> loader(int index, int thumbSize) {
+            ImageFile imgFile = browsed.get(index);
+            return () -> thumbnail(imgFile, thumbSize);
+        }
+
+        @Override
+        public void select(int index, boolean open) {
+            ImageFile imgFile = browsed.get(index);
+            Playlist.Snapshot<ImageFile> s = playlist.snapshot();
+            // The playlist may have moved on since the browsers were refreshed
+            int position = index < s.size() && s.get(index) == imgFile ? index : -1;
+            for (int i = 0; position < 0 && i < s.size(); i++) {
+                if (s.get(i) == imgFile) position = i;
+            }
+            if (position < 0) return;
+
+            direction = position >= s.current ? 1 : -1;
+            playlist.setCurrent(position);
+            displayCurrentImage();
+            if (open && gridShown) {
+                toggleGrid();
+            }
+        }
+    };
+
+    // Points the browsers at the latest playlist, scrolling to the current slide when it changed
+    private void refreshBrowsers() {
+        browsed = playlist.snapshot();
+        filmstrip.refresh();
+        grid.refresh();
+        if (browsed.current() != browsedCurrent) {
+            browsedCurrent = browsed.current();
+            filmstrip.showCurrent();
+            grid.showCurrent();
+        }
     }
 
-    private void previousImage() {
-        if (imageFiles.isEmpty()) return;
-        currentIndex = (currentIndex - 1 + imageFiles.size()) % imageFiles.size();
-        displayCurrentImage();
+    // Thumbnail fitting a size × size cell: from the stored preview when there is one, otherwise
+    // from a subsampled decode, which is then stored as the file's preview. The decode is sized
+    // for a full preview rather than the cell, so slides still get a sharp one to start from
+    private BufferedImage thumbnail(ImageFile imgFile, int size) {
+        ThumbnailStore.Entry entry = thumbnailStore.lookup(imgFile.path, imgFile.lastModified, imgFile.size);
+        BufferedImage source = entry != null ? thumbnailStore.readPreview(entry) : null;
+        if (source == null) {
+            int longest = Math.max(1, Math.max(imgFile.width, imgFile.height));
+            int subsampling = ImageDecoder.subsamplingFor(
+                    (double) Math.max(size, ThumbnailStore.PREVIEW_SIZE) / longest);
+            source = imgFile.decode(subsampling);
+            if (source == null) return null;
+            thumbnailStore.putPreview(imgFile.path, imgFile.lastModified, imgFile.size, source, subsampling);
+        }
+        return ThumbnailBrowser.fit(source, size);
     }
 
-    private void nextImage() {
-        if (imageFiles.isEmpty()) return;
-        currentIndex = (currentIndex + 1) % imageFiles.size();
-        displayCurrentImage();
+    // G: swaps the slide for the thumbnail grid and back
+    private void toggleGrid() {
+        gridShown = !gridShown;
+        ((CardLayout) viewPanel.getLayout()).show(viewPanel, gridShown ? "grid" : "slide");
+        gridBtn.setText(gridShown ? "Slide" : "Grid");
+        if (gridShown) {
+            grid.showCurrent();
+        }
     }
 
     private void toggleSlideshow() {
-        if (imageFiles.isEmpty()) return;
+        if (playlist.isEmpty()) return;
 
         isPlaying = !isPlaying;
         playBtn.setText(isPlaying ? "Pause" : "Play");
@@ -603,17 +1367,19 @@ public class ImageSlideshowViewer extends JFrame {
             isFullscreen = true;
             controlPanel.setVisible(false);
             metadataPanel.setVisible(false);
+            filmstripScroll.setVisible(false);
         } else {
             device.setFullScreenWindow(null);
             setUndecorated(false);
             isFullscreen = false;
             controlPanel.setVisible(true);
             metadataPanel.setVisible(true);
+            filmstripScroll.setVisible(filmstripCheck.isSelected());
             setVisible(true);
         }
     }
 
-    // Image editing methods
+    // Image editing methods: edits are recorded and applied at paint time
     private void cropImage() {
         if (originalImage == null) return;
 
@@ -628,8 +1394,9 @@ public class ImageSlideshowViewer extends JFrame {
                 int w = Integer.parseInt(parts[2].trim());
                 int h = Integer.parseInt(parts[3].trim());
 
-                if (x >= 0 && y >= 0 && x + w <= originalImage.getWidth() && y + h <= originalImage.getHeight()) {
-                    editedImage = originalImage.getSubimage(x, y, w, h);
+                // Crop is given in source pixels
+                if (x >= 0 && y >= 0 && w > 0 && h > 0 && x + w <= sourceWidth && y + h <= sourceHeight) {
+                    edits.crop(new Rectangle(x, y, w, h));
                     imagePanel.repaint();
                 }
             } catch (Exception e) {
@@ -639,176 +1406,301 @@ public class ImageSlideshowViewer extends JFrame {
     }
 
     private void rotateImage() {
-        rotation = (rotation + 90) % 360;
-        applyEdits();
+        edits.rotate();
         imagePanel.repaint();
     }
 
     private void flipImage(boolean horizontal, boolean vertical) {
-        if (horizontal) flipH = !flipH;
-        if (vertical) flipV = !flipV;
-        applyEdits();
+        edits.flip(horizontal, vertical);
         imagePanel.repaint();
     }
 
     private void resetImage() {
         resetEditingState();
-        applyEdits();
         imagePanel.repaint();
     }
 
     private void resetEditingState() {
-        rotation = 0;
-        flipH = false;
-        flipV = false;
-        editedImage = null;
-        zoomFactor = 1.0;
-        zoomSlider.setValue(100);
+        edits.reset();
+        ImageFile current = playlist.current();
+        zoomFactor = current == null ? 1.0 : fitZoom(current);
+        zoomSlider.setValue((int) (zoomFactor * 100));
         imageOffset = new Point(0, 0);
     }
 
-    private void applyEdits() {
+    // Decodes, renders and saves on a worker thread; the slide's state is read here on the EDT
+    private void setAsWallpaper() {
         if (originalImage == null) return;
 
-        editedImage = deepCopy(originalImage);
-
-        // Apply rotation
-        if (rotation != 0) {
-            editedImage = rotateImageTransform(editedImage, rotation);
-        }
+        ImageFile imgFile = playlist.current();
+        ImageEdits wallpaperEdits = edits.copy();
+        BufferedImage shown = originalImage;
+        int shownSubsampling = rasterSubsampling;
+        int width = sourceWidth, height = sourceHeight;
+        Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+        Dimension out = wallpaperEdits.outputSize(width, height);
+        int subsampling = ImageDecoder.subsamplingFor(
+                Math.min(1.0, Math.max((double) screen.width / out.width, (double) screen.height / out.height)));
+        boolean windows = System.getProperty("os.name").toLowerCase().contains("win");
+
+        new SwingWorker<File, Void>() {
+            @Override
+            protected File doInBackground() throws Exception {
+                // Materialize the edits at screen resolution
+                BufferedImage raster = subsampling == shownSubsampling ? shown : loadImage(imgFile, subsampling);
+                if (raster == null) throw new IOException("Cannot decode " + new File(imgFile.path).getName());
+                BufferedImage wallpaper = wallpaperEdits.render(raster, subsampling, width, height);
+
+                // Save temp image
+                File tempFile = File.createTempFile("wallpaper", ".png");
+                ImageIO.write(wallpaper, "png", tempFile);
+
+                // Set as wallpaper (Windows)
+                if (windows) {
+                    Runtime.getRuntime().exec("reg add \"HKEY_CURRENT_USER\\Control Panel\\Desktop\" /v Wallpaper /t REG_SZ /d \"" +
+                            tempFile.getAbsolutePath() + "\" /f");
+                    Runtime.getRuntime().exec("RUNDLL32.EXE user32.dll,UpdatePerUserSystemParameters");
+                }
+                return tempFile;
+            }
 
-        // Apply flips
-        if (flipH || flipV) {
-            editedImage = flipImageTransform(editedImage, flipH, flipV);
-        }
+            @Override
+            protected void done() {
+                try {
+                    File tempFile = get();
+                    if (windows) {
+                        JOptionPane.showMessageDialog(ImageSlideshowViewer.this, "Wallpaper set successfully!");
+                    } else {
+                        JOptionPane.showMessageDialog(ImageSlideshowViewer.this, "Wallpaper setting is currently supported on Windows only.\nImage saved to: " + tempFile.getAbsolutePath());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    showError("Wallpaper Error", "Failed to set wallpaper: " + e.getCause().getMessage());
+                }
+            }
+        }.execute();
     }
 
-    private BufferedImage deepCopy(BufferedImage original) {
-        BufferedImage copy = new BufferedImage(original.getWidth(), original.getHeight(), original.getType());
-        Graphics2D g = copy.createGraphics();
-        g.drawImage(original, 0, 0, null);
-        g.dispose();
-        return copy;
+    private void showError(String title, String message) {
+        JOptionPane.showMessageDialog(this, message, title, JOptionPane.ERROR_MESSAGE);
     }
 
-    private BufferedImage rotateImageTransform(BufferedImage img, int degrees) {
-        double radians = Math.toRadians(degrees);
-        double sin = Math.abs(Math.sin(radians));
-        double cos = Math.abs(Math.cos(radians));
-
-        int w = img.getWidth();
-        int h = img.getHeight();
-        int newW = (int) Math.floor(w * cos + h * sin);
-        int newH = (int) Math.floor(h * cos + w * sin);
+    // Custom image panel with smooth rendering
+    private class ImagePanel extends JPanel {
+        final SlidePainter slidePainter = new SlidePainter();
+        final TransitionEngine transitions = new TransitionEngine(this);
+        private final Timer overlayRefresh = new Timer(500, e -> repaint());
+        private boolean overlay = false;
 
-        BufferedImage result = new BufferedImage(newW, newH, img.getType());
-        Graphics2D g = result.createGraphics();
-        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        @Override
+        protected void paintComponent(Graphics g) {
+            long start = System.nanoTime();
+            super.paintComponent(g);
 
-        AffineTransform at = new AffineTransform();
-        at.translate((newW - w) / 2.0, (newH - h) / 2.0);
-        at.rotate(radians, w / 2.0, h / 2.0);
-        g.setTransform(at);
-        g.drawImage(img, 0, 0, null);
-        g.dispose();
+            Graphics2D g2d = (Graphics2D) g.create();
+            if (transitions.isActive()) {
+                transitions.paint(g2d, getWidth(), getHeight());
+            } else {
+                paintSlide(g2d);
+            }
+            g2d.dispose();
+            Metrics.PAINT.recordSince(start);
 
-        return result;
-    }
+            if (overlay) {
+                paintOverlay((Graphics2D) g);
+            }
+        }
 
-    private BufferedImage flipImageTransform(BufferedImage img, boolean horizontal, boolean vertical) {
-        int w = img.getWidth();
-        int h = img.getHeight();
-        BufferedImage result = new BufferedImage(w, h, img.getType());
-        Graphics2D g = result.createGraphics();
+        // F3: live pipeline figures, refreshed twice a second
+        void toggleOverlay() {
+            overlay = !overlay;
+            if (overlay) {
+                overlayRefresh.start();
+            } else {
+                overlayRefresh.stop();
+            }
+            repaint();
+        }
 
-        AffineTransform at = new AffineTransform();
-        if (horizontal) {
-            at.concatenate(AffineTransform.getScaleInstance(-1, 1));
-            at.concatenate(AffineTransform.getTranslateInstance(-w, 0));
+        private void paintOverlay(Graphics2D g) {
+            List<String> lines = new ArrayList<>();
+            for (Metrics.Histogram h : Metrics.ALL) {
+                lines.add(h.summary());
+            }
+            Map<String, Long> gauges = metricGauges();
+            long lookups = gauges.get("cache_hits") + gauges.get("cache_misses");
+            lines.add(String.format("cache    %.0f%% hits, %d evictions, rasters %d / %d MB, off-heap %d / %d MB",
+                    lookups == 0 ? 0.0 : 100.0 * gauges.get("cache_hits") / lookups, gauges.get("cache_evictions"),
+                    gauges.get("raster_bytes") >> 20, imageCache.getBudgetBytes() >> 20,
+                    gauges.get("offheap_bytes") >> 20, imageCache.getOffHeapBudgetBytes() >> 20));
+            lines.add(String.format("decoded  %d MB, heap %d MB, last transition %.0f fps, %d dropped",
+                    gauges.get("bytes_decoded") >> 20, gauges.get("heap_used") >> 20,
+                    transitions.getLastFps(), gauges.get("dropped_frames")));
+
+            g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+            FontMetrics fm = g.getFontMetrics();
+            int width = 0;
+            for (String line : lines) {
+                width = Math.max(width, fm.stringWidth(line));
+            }
+            g.setColor(new Color(0, 0, 0, 170));
+            g.fillRect(8, 8, width + 16, lines.size() * fm.getHeight() + 12);
+            g.setColor(Color.GREEN);
+            for (int i = 0; i < lines.size(); i++) {
+                g.drawString(lines.get(i), 16, 14 + fm.getAscent() + i * fm.getHeight());
+            }
         }
-        if (vertical) {
-            at.concatenate(AffineTransform.getScaleInstance(1, -1));
-            at.concatenate(AffineTransform.getTranslateInstance(0, -h));
+
+        // Renders the current frame into a panel-sized buffer, or null before the panel is laid out
+        BufferedImage snapshot() {
+            return render(transitions.isActive());
         }
 
-        g.setTransform(at);
-        g.drawImage(img, 0, 0, null);
-        g.dispose();
+        // The current slide alone, ignoring any transition in flight
+        BufferedImage slideSnapshot() {
+            return render(false);
+        }
 
-        return result;
-    }
+        private BufferedImage render(boolean transition) {
+            int w = getWidth(), h = getHeight();
+            if (w <= 0 || h <= 0 || !isShowing()) return null;
 
-    private void setAsWallpaper() {
-        if (editedImage == null) return;
+            BufferedImage buffer = transitions.takeBuffer();
+            if (buffer == null || buffer.getWidth() != w || buffer.getHeight() != h) {
+                GraphicsConfiguration gc = getGraphicsConfiguration();
+                buffer = gc != null ? gc.createCompatibleImage(w, h)
+                        : new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            }
 
-        try {
-            // Save temp image
-            File tempFile = File.createTempFile("wallpaper", ".png");
-            ImageIO.write(editedImage, "png", tempFile);
-
-            // Set as wallpaper (Windows)
-            String os = System.getProperty("os.name").toLowerCase();
-            if (os.contains("win")) {
-                Runtime.getRuntime().exec("reg add \"HKEY_CURRENT_USER\\Control Panel\\Desktop\" /v Wallpaper /t REG_SZ /d \"" +
-                        tempFile.getAbsolutePath() + "\" /f");
-                Runtime.getRuntime().exec("RUNDLL32.EXE user32.dll,UpdatePerUserSystemParameters");
-                JOptionPane.showMessageDialog(this, "Wallpaper set successfully!");
+            Graphics2D g2d = buffer.createGraphics();
+            g2d.setColor(getBackground());
+            g2d.fillRect(0, 0, w, h);
+            if (transition) {
+                transitions.paint(g2d, w, h);
             } else {
-                JOptionPane.showMessageDialog(this, "Wallpaper setting is currently supported on Windows only.\nImage saved to: " + tempFile.getAbsolutePath());
+                paintSlide(g2d);
             }
-        } catch (Exception e) {
-            showError("Wallpaper Error", "Failed to set wallpaper: " + e.getMessage());
-        }
-    }
-
-    private void showError(String title, String message) {
-        JOptionPane.showMessageDialog(this, message, title, JOptionPane.ERROR_MESSAGE);
-    }
-
-    // Custom image panel with smooth rendering
-    private class ImagePanel extends JPanel {
-        private float alpha = 1.0f;
-
-        public void setAlpha(float alpha) {
-            this.alpha = alpha;
+            g2d.dispose();
+            return buffer;
         }
 
-        @Override
-        protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
-
-            if (editedImage == null) {
+        private void paintSlide(Graphics2D g) {
+            if (originalImage == null) {
                 g.setColor(Color.GRAY);
                 g.drawString("No image loaded", getWidth()/2 - 50, getHeight()/2);
                 return;
             }
 
+            // Pre-scaled, screen-compatible copy makes the repaint a blit; tiles need the direct path
             Graphics2D g2d = (Graphics2D) g.create();
-            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-            g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
-
-            // Calculate scaled dimensions
-            double imgW = editedImage.getWidth() * zoomFactor;
-            double imgH = editedImage.getHeight() * zoomFactor;
-
-            // Center image
-            int x = (int) ((getWidth() - imgW) / 2 + imageOffset.x);
-            int y = (int) ((getHeight() - imgH) / 2 + imageOffset.y);
-
-            g2d.drawImage(editedImage, x, y, (int) imgW, (int) imgH, null);
+            boolean tiled = useTiles();
+            AffineTransform sourceToScreen = slidePainter.paint(g2d, getGraphicsConfiguration(), getSize(),
+                    getBackground(), originalImage, rasterSubsampling, sourceWidth, sourceHeight, edits,
+                    zoomFactor, imageOffset, tiled);
+
+            // Sharper tiles on top of the coarse raster; missing ones repaint when decoded
+            if (tiled) {
+                tiledImage.paint(g2d, sourceToScreen, edits.cropBounds(sourceWidth, sourceHeight), zoomFactor,
+                        new Rectangle(0, 0, getWidth(), getHeight()), this::repaint);
+            }
             g2d.dispose();
         }
     }
 
-    // Image file container
+    // Image file container: indexed metadata plus a handle that decodes pixels on demand
     private static class ImageFile {
         final String path;
-        final BufferedImage image;
+        final long size;
+        final long lastModified;
+        final int width, height;
+        volatile ExifReader.Tags exif; // Memoized on first read
+        volatile Long hash; // DuplicateIndex.dHash, memoized on first computation
 
-        ImageFile(String path, BufferedImage image) {
+        ImageFile(String path, long size, long lastModified, int width, int height) {
             this.path = path;
-            this.image = image;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.width = width;
+            this.height = height;
+        }
+
+        // Reads file attributes and header dimensions without decoding any pixels;
+        // files unchanged since they were last seen come straight from the store
+        static ImageFile index(Path path, ThumbnailStore store) throws IOException {
+            BasicFileAttributes attrs =
+                    Files.readAttributes(path, BasicFileAttributes.class);
+            long size = attrs.size();
+            long lastModified = attrs.lastModifiedTime().toMillis();
+
+            ThumbnailStore.Entry cached = store.lookup(path.toString(), lastModified, size);
+            if (cached != null) {
+                ImageFile imgFile = new ImageFile(path.toString(), size, lastModified, cached.width, cached.height);
+                if (cached.exif != null) {
+                    imgFile.exif = ExifReader.Tags.decode(cached.exif);
+                }
+                if (cached.hashed) {
+                    imgFile.hash = cached.hash;
+                }
+                imgFile.exif(store);
+                return imgFile;
+            }
+
+            Dimension dims = ImageDecoder.readSize(path.toFile());
+            if (dims == null) return null;
+            store.putDimensions(path.toString(), lastModified, size, dims.width, dims.height);
+            ImageFile imgFile = new ImageFile(path.toString(), size, lastModified, dims.width, dims.height);
+            imgFile.exif(store); // The header is mapped already, so this costs no extra read
+            return imgFile;
+        }
+
+        // The EXIF summary, read and stored on first use
+        ExifReader.Tags exif(ThumbnailStore store) {
+            if (exif == null) {
+                long start = System.nanoTime();
+                exif = ExifReader.read(Paths.get(path));
+                Metrics.METADATA.recordSince(start);
+                store.putExif(path, lastModified, size, exif.encode());
+            }
+            return exif;
+        }
+
+        String sourceKey() {
+            return path + "@" + lastModified;
+        }
+
+        String cacheKey(int subsampling) {
+            return sourceKey() + "#" + subsampling;
+        }
+
+        // Hashes the stored preview if there is one, else a decode about HASH_SIZE pixels across
+        Long perceptualHash(ThumbnailStore store) {
+            if (hash != null) return hash;
+
+            ThumbnailStore.Entry entry = store.lookup(path, lastModified, size);
+            BufferedImage small = entry != null ? store.readPreview(entry) : null;
+            if (small == null) {
+                small = decode(ImageDecoder.subsamplingFor((double) HASH_SIZE / Math.max(1, Math.min(width, height))));
+            }
+            if (small == null) return null;
+
+            hash = DuplicateIndex.dHash(small);
+            store.putHash(path, lastModified, size, hash);
+            return hash;
+        }
+
+        BufferedImage decode(int subsampling) {
+            return decode(subsampling, null);
+        }
+
+        BufferedImage decode(int subsampling, ImageDecoder.PassListener passes) {
+            try {
+                Dimension known = width > 0 && height > 0 ? new Dimension(width, height) : null;
+                return ImageDecoder.decode(new File(path), known, subsampling, passes);
+            } catch (IOException e) {
+                System.err.println("Failed to decode: " + path + ": " + e.getMessage());
+                return null;
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,203 @@
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only memory mappings of local image files, shared by the header sniff, the
+ * decoder and the EXIF reader so a slide's bytes come off disk (or the network
+ * mount) once instead of once per reader. Each open hands out an ImageInputStream
+ * over the shared mapping with its own position.
+ *
+ * Mappings are kept in LRU order up to slideshow.mmap.megabytes (0 disables them)
+ * and dropped when the image cache evicts the file's rasters. The JDK has no
+ * explicit unmap, so a dropped mapping is unmapped once the last stream over it is
+ * collected. A file that changes size or mtime is mapped afresh.
+ *
+ * Files modified within the last slideshow.mmap.settleMillis are read through a
+ * plain stream, since they may still be being written. A file truncated under a
+ * mapping makes reads fault with InternalError. When the fault is raised inside the
+ * stream, it drops the mapping and carries on from a plain file stream; compiled code
+ * may raise it a little later instead, so the readers also treat it as a failed read.
+ * The next open maps the file afresh, as its size has changed.
+ *
+ * On Windows a mapped file cannot be deleted or replaced until its buffer is
+ * collected, so turn mapping off there for folders that other programs rewrite in place.
+ */
+final class MappedFiles {
+    private static final long BUDGET_BYTES = Long.getLong("slideshow.mmap.megabytes", 512) << 20;
+    private static final long SETTLE_MILLIS = Long.getLong("slideshow.mmap.settleMillis", 2000);
+
+    private static final class Mapping {
+        final ByteBuffer buffer;
+        final long lastModified;
+
+        Mapping(ByteBuffer buffer, long lastModified) {
+            this.buffer = buffer;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static final LinkedHashMap<String, Mapping> MAPPINGS = new LinkedHashMap<>(16, 0.75f, true);
+    private static long mappedBytes = 0;
+
+    private MappedFiles() {
+    }
+
+    /**
+     * A stream over the file's mapping, or a plain file stream when mapping is off or
+     * the file is too large for one buffer. Null if the file cannot be opened.
+     */
+    static ImageInputStream open(File file) throws IOException {
+        ByteBuffer buffer = map(file);
+        return buffer != null ? new Stream(file, buffer) : ImageIO.createImageInputStream(file);
+    }
+
+    // Read-only view of the whole file positioned at 0, or null when it is not mapped
+    static ByteBuffer map(File file) throws IOException {
+        if (BUDGET_BYTES <= 0) return null;
+
+        String key = file.getAbsolutePath();
+        BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        long size = attrs.size(), lastModified = attrs.lastModifiedTime().toMillis();
+        if (size > Math.min(Integer.MAX_VALUE, BUDGET_BYTES)) return null;
+        if (System.currentTimeMillis() - lastModified < SETTLE_MILLIS) return null;
+
+        synchronized (MAPPINGS) {
+            Mapping m = MAPPINGS.get(key);
+            if (m != null && m.lastModified == lastModified && m.buffer.capacity() == size) {
+                return m.buffer.duplicate();
+            }
+        }
+
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        synchronized (MAPPINGS) {
+            Mapping previous = MAPPINGS.put(key, new Mapping(buffer, lastModified));
+            if (previous != null) {
+                mappedBytes -= previous.buffer.capacity();
+            }
+            mappedBytes += size;
+
+            Iterator<Map.Entry<String, Mapping>> it = MAPPINGS.entrySet().iterator();
+            while (mappedBytes > BUDGET_BYTES && it.hasNext()) {
+                Map.Entry<String, Mapping> eldest = it.next();
+                if (eldest.getKey().equals(key)) continue;
+                mappedBytes -= eldest.getValue().buffer.capacity();
+                it.remove();
+            }
+        }
+        return buffer.duplicate();
+    }
+
+    // Drops the file's mapping; streams already open keep reading it
+    static void release(String path) {
+        synchronized (MAPPINGS) {
+            Mapping m = MAPPINGS.remove(new File(path).getAbsolutePath());
+            if (m != null) {
+                mappedBytes -= m.buffer.capacity();
+            }
+        }
+    }
+
+    static long getMappedBytes() {
+        synchronized (MAPPINGS) {
+            return mappedBytes;
+        }
+    }
+
+    /**
+     * ImageInputStream reading straight from a mapped buffer by absolute index, or
+     * from a plain file stream once the mapping has faulted.
+     */
+    static final class Stream extends ImageInputStreamImpl {
+        private final File file;
+        private final ByteBuffer buffer;
+        private ImageInputStream fallback;
+
+        Stream(File file, ByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            if (fallback == null) {
+                try {
+                    if (streamPos >= buffer.limit()) return -1;
+                    int b = buffer.get((int) streamPos) & 0xFF;
+                    streamPos++;
+                    return b;
+                } catch (InternalError e) {
+                    fallBack();
+                }
+            }
+            fallback.seek(streamPos);
+            int b = fallback.read();
+            if (b >= 0) streamPos++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkClosed();
+            if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+            bitOffset = 0;
+            if (len == 0) return 0;
+
+            if (fallback == null) {
+                try {
+                    long remaining = buffer.limit() - streamPos;
+                    if (remaining <= 0) return -1;
+                    int n = (int) Math.min(len, remaining);
+                    buffer.get((int) streamPos, b, off, n);
+                    streamPos += n;
+                    return n;
+                } catch (InternalError e) {
+                    fallBack();
+                }
+            }
+            fallback.seek(streamPos);
+            int n = fallback.read(b, off, len);
+            if (n > 0) streamPos += n;
+            return n;
+        }
+
+        @Override
+        public long length() {
+            if (fallback == null) return buffer.limit();
+            try {
+                return fallback.length();
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (fallback != null) fallback.close();
+        }
+
+        // The file changed under the mapping: stop using it here and for later opens
+        private void fallBack() throws IOException {
+            release(file.getPath());
+            fallback = ImageIO.createImageInputStream(file);
+            if (fallback == null) throw new IOException("Cannot reopen " + file);
+        }
+    }
+}
@@ -0,0 +1,486 @@
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Columnar index of every image seen, for sorting and filtering the playlist without
+ * touching the files again. Each row is one file; capture time, size and dimensions
+ * are primitive columns and camera make and model are codes into small dictionaries,
+ * so a query over 100k rows is a few linear passes over arrays plus a primitive sort.
+ * Removed or replaced rows are tombstoned and compacted once they pile up.
+ */
+final class MetadataIndex<T> {
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    /** Sortable columns. */
+    enum Field { NAME, DATE, SIZE, WIDTH, HEIGHT, CAMERA }
+
+    /**
+     * A filter and sort order, parsed from "key=value" clauses separated by ';', e.g.
+     * {@code days=7; camera=canon r5; orientation=landscape; sort=-date}. Keys: days,
+     * from, to (yyyy-MM-dd), camera (every word must appear in the make or model),
+     * orientation (landscape, portrait, square), minwidth, minheight, minsize and maxsize
+     * (MB), sort (name, date, size, width, height, camera; a leading '-' for descending).
+     */
+    static final class Query {
+        static final Query ALL = new Query("");
+
+        final String spec;
+        private int days;
+        private long from = Long.MIN_VALUE, to = Long.MAX_VALUE;
+        private String[] cameraWords = new String[0];
+        private String orientation;
+        private int minWidth, minHeight;
+        private long minSize, maxSize = Long.MAX_VALUE;
+        private Field sort = Field.NAME;
+        private boolean descending;
+        private long now = System.currentTimeMillis(); // What "days" counts back from
+
+        private Query(String spec) {
+            this.spec = spec;
+        }
+
+        static Query parse(String spec) {
+            Query q = new Query(spec.trim());
+            for (String clause : spec.split(";")) {
+                if (clause.isBlank()) continue;
+                int eq = clause.indexOf('=');
+                if (eq < 0) throw new IllegalArgumentException("Expected key=value: " + clause.trim());
+                String key = clause.substring(0, eq).trim().toLowerCase(Locale.ROOT);
+                String value = clause.substring(eq + 1).trim();
+                try {
+                    switch (key) {
+                        case "days": q.days = Integer.parseInt(value); break;
+                        case "from": q.from = parseDate(value); break;
+                        case "to": q.to = parseDate(value) + DAY_MILLIS - 1; break;
+                        case "camera": q.cameraWords = value.toLowerCase(Locale.ROOT).split("\\s+"); break;
+                        case "orientation":
+                            q.orientation = value.toLowerCase(Locale.ROOT);
+                            if (!Arrays.asList("landscape", "portrait", "square").contains(q.orientation)) {
+                                throw new IllegalArgumentException("Not an orientation: " + value);
+                            }
+                            break;
+                        case "minwidth": q.minWidth = Integer.parseInt(value); break;
+                        case "minheight": q.minHeight = Integer.parseInt(value); break;
+                        case "minsize": q.minSize = (long) (Double.parseDouble(value) * (1 << 20)); break;
+                        case "maxsize": q.maxSize = (long) (Double.parseDouble(value) * (1 << 20)); break;
+                        case "sort":
+                            q.descending = value.startsWith("-");
+                            q.sort = field(value.substring(q.descending ? 1 : 0));
+                            break;
+                        default: throw new IllegalArgumentException("Unknown filter: " + key);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Not a number for " + key + ": " + value);
+                }
+            }
+            return q;
+        }
+
+        private static Field field(String name) {
+            for (Field f : Field.values()) {
+                if (f.name().equalsIgnoreCase(name)) return f;
+            }
+            throw new IllegalArgumentException("Cannot sort by " + name);
+        }
+
+        private static long parseDate(String value) {
+            try {
+                return new SimpleDateFormat("yyyy-MM-dd").parse(value).getTime();
+            } catch (ParseException e) {
+                throw new IllegalArgumentException("Dates are yyyy-MM-dd: " + value);
+            }
+        }
+
+        /**
+         * The same query with its "days" window counted back from now. The window is fixed
+         * between calls, so the playlist built from a query and the matches checked for
+         * files found later agree on it; re-anchor whenever the query is (re)applied.
+         */
+        Query at(long now) {
+            Query q = parse(spec);
+            q.now = now;
+            return q;
+        }
+
+        // Whether the window moves with the clock, so the query needs re-anchoring now and then
+        boolean isSliding() {
+            return days > 0;
+        }
+
+        // Start of the capture-time window
+        private long earliest() {
+            return days > 0 ? Math.max(from, now - days * DAY_MILLIS) : from;
+        }
+
+        boolean isAll() {
+            return spec.isEmpty();
+        }
+    }
+
+    private final Comparator<? super T> nameOrder;
+    private final Function<? super T, String> key;
+    private final Map<String, Integer> rows = new HashMap<>(); // Key to its live row
+
+    // Columns, indexed by row
+    private Object[] items = new Object[1024];
+    private long[] captured = new long[1024];
+    private long[] sizes = new long[1024];
+    private int[] widths = new int[1024];
+    private int[] heights = new int[1024];
+    private int[] makes = new int[1024];
+    private int[] models = new int[1024];
+    private int count = 0;
+
+    private final Dictionary makeNames = new Dictionary();
+    private final Dictionary modelNames = new Dictionary();
+    private int[] byName = new int[0]; // Rows below sortedUpTo in name order, dead ones included
+    private int sortedUpTo = 0;
+
+    /**
+     * @param nameOrder the default playlist order, used for the NAME sort and to break ties
+     * @param key       identity of an item; a put with an existing key replaces its row
+     */
+    MetadataIndex(Comparator<? super T> nameOrder, Function<? super T, String> key) {
+        this.nameOrder = nameOrder;
+        this.key = key;
+    }
+
+    /**
+     * Adds or replaces the item's row. Capture time is in epoch millis; make and model
+     * may be null.
+     */
+    synchronized void put(T item, long capturedAt, long size, int width, int height, String make, String model) {
+        if (count == items.length) grow();
+        int row = count++;
+        items[row] = item;
+        captured[row] = capturedAt;
+        sizes[row] = size;
+        widths[row] = width;
+        heights[row] = height;
+        makes[row] = makeNames.code(make);
+        models[row] = modelNames.code(model);
+
+        Integer old = rows.put(key.apply(item), row);
+        if (old != null) {
+            items[old] = null;
+        }
+        // Keep the name order nearly current, so a query only sorts the last few arrivals
+        if (count - sortedUpTo > Math.max(256, sortedUpTo / 8)) {
+            mergeNameOrder();
+        }
+        compactIfStale();
+    }
+
+    synchronized void removeIf(Predicate<String> filter) {
+        boolean removed = false;
+        Iterator<Map.Entry<String, Integer>> it = rows.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Integer> e = it.next();
+            if (filter.test(e.getKey())) {
+                items[e.getValue()] = null;
+                it.remove();
+                removed = true;
+            }
+        }
+        if (removed) {
+            compactIfStale();
+        }
+    }
+
+    synchronized int size() {
+        return rows.size();
+    }
+
+    synchronized boolean matches(T item, Query q) {
+        Integer row = rows.get(key.apply(item));
+        return row != null && filter(q, q.earliest(), cameraMatches(q), row);
+    }
+
+    // Items passing the filter in the query's order; ties keep name order
+    synchronized List<T> query(Query q) {
+        mergeNameOrder();
+        int[] order = byName;
+        long earliest = q.earliest();
+        boolean[][] camera = cameraMatches(q);
+        int[] selected = new int[order.length];
+        int n = 0;
+        for (int row : order) {
+            if (items[row] != null && filter(q, earliest, camera, row)) selected[n++] = row;
+        }
+
+        if (q.sort != Field.NAME) {
+            long[] keys = sortKeys(q.sort, q.descending);
+            mergeSort(selected, Arrays.copyOf(selected, n), 0, n, keys);
+        } else if (q.descending) {
+            for (int i = 0, j = n - 1; i < j; i++, j--) {
+                int t = selected[i];
+                selected[i] = selected[j];
+                selected[j] = t;
+            }
+        }
+
+        List<T> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(cast(items[selected[i]]));
+        }
+        return result;
+    }
+
+    /**
+     * Item order matching {@link #query}, for inserting new items into a playlist that
+     * was built from it. Items missing from the index sort last. Each item's key is taken
+     * once, when the comparator is made or when it first sees the item, so a later put for
+     * the same path cannot reorder entries already placed with it.
+     */
+    Comparator<T> comparator(Query q) {
+        Comparator<T> byName = q.descending && q.sort == Field.NAME
+                ? (a, b) -> nameOrder.compare(b, a) : nameOrder::compare;
+        if (q.sort == Field.NAME) return byName;
+
+        // Items don't override equals, so this holds one key per item object
+        Map<T, Long> keys = new WeakHashMap<>();
+        synchronized (this) {
+            long[] current = sortKeys(q.sort, q.descending);
+            for (int row = 0; row < count; row++) {
+                if (items[row] != null) keys.put(cast(items[row]), current[row]);
+            }
+        }
+        ToLongFunction<T> keyOf = item -> {
+            synchronized (keys) {
+                Long k = keys.get(item);
+                if (k == null) {
+                    synchronized (this) {
+                        k = sortKey(q.sort, q.descending, item);
+                    }
+                    keys.put(item, k);
+                }
+                return k;
+            }
+        };
+        return (a, b) -> {
+            int c = Long.compare(keyOf.applyAsLong(a), keyOf.applyAsLong(b));
+            return c != 0 ? c : byName.compare(a, b);
+        };
+    }
+
+    private long sortKey(Field field, boolean descending, T item) {
+        Integer row = rows.get(key.apply(item));
+        if (row == null) return Long.MAX_VALUE;
+        return sortKey(field, descending, row, makeNames.ranks(), modelNames.ranks());
+    }
+
+    private boolean filter(Query q, long earliest, boolean[][] camera, int row) {
+        if (captured[row] < earliest || captured[row] > q.to) return false;
+        if (sizes[row] < q.minSize || sizes[row] > q.maxSize) return false;
+        int w = widths[row], h = heights[row];
+        if (w < q.minWidth || h < q.minHeight) return false;
+        if (q.orientation != null) {
+            switch (q.orientation) {
+                case "landscape": if (w <= h) return false; break;
+                case "portrait": if (h <= w) return false; break;
+                default: if (w != h) return false; break;
+            }
+        }
+        int make = makes[row], model = models[row];
+        for (boolean[] hits : camera) {
+            if (!(make >= 0 && hits[make]) && !(model >= 0 && hits[makeNames.size() + model])) return false;
+        }
+        return true;
+    }
+
+    // Per camera word, which make codes (first) and model codes (after them) contain it
+    private boolean[][] cameraMatches(Query q) {
+        boolean[][] matches = new boolean[q.cameraWords.length][];
+        for (int i = 0; i < matches.length; i++) {
+            String word = q.cameraWords[i];
+            boolean[] hits = new boolean[makeNames.size() + modelNames.size()];
+            for (int code = 0; code < makeNames.size(); code++) {
+                hits[code] = makeNames.lowerCase(code).contains(word);
+            }
+            for (int code = 0; code < modelNames.size(); code++) {
+                hits[makeNames.size() + code] = modelNames.lowerCase(code).contains(word);
+            }
+            matches[i] = hits;
+        }
+        return matches;
+    }
+
+    // One primitive key per row; unknown values sort last in either direction
+    private long[] sortKeys(Field field, boolean descending) {
+        int[] makeRanks = makeNames.ranks(), modelRanks = modelNames.ranks();
+        long[] keys = new long[count];
+        for (int row = 0; row < count; row++) {
+            keys[row] = sortKey(field, descending, row, makeRanks, modelRanks);
+        }
+        return keys;
+    }
+
+    private long sortKey(Field field, boolean descending, int row, int[] makeRanks, int[] modelRanks) {
+        long value;
+        switch (field) {
+            case DATE: value = captured[row]; break;
+            case SIZE: value = sizes[row]; break;
+            case WIDTH: value = widths[row]; break;
+            case HEIGHT: value = heights[row]; break;
+            case CAMERA:
+                if (makes[row] < 0 && models[row] < 0) return Long.MAX_VALUE;
+                // Make rank in the high half, model rank in the low half
+                value = (long) (makes[row] < 0 ? 0 : makeRanks[makes[row]] + 1) << 32
+                        | (models[row] < 0 ? 0 : modelRanks[models[row]] + 1);
+                break;
+            default: value = 0; break;
+        }
+        return descending ? -value : value;
+    }
+
+    // Stable merge sort of rows by key, into dst; src holds the same rows
+    private static void mergeSort(int[] dst, int[] src, int lo, int hi, long[] keys) {
+        if (hi - lo < 16) {
+            for (int i = lo + 1; i < hi; i++) {
+                int row = dst[i];
+                int j = i - 1;
+                while (j >= lo && keys[dst[j]] > keys[row]) {
+                    dst[j + 1] = dst[j];
+                    j--;
+                }
+                dst[j + 1] = row;
+            }
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        // Sort each half of src using dst as scratch, then merge them back into dst
+        mergeSort(src, dst, lo, mid, keys);
+        mergeSort(src, dst, mid, hi, keys);
+        for (int i = lo, p = lo, q = mid; i < hi; i++) {
+            if (q >= hi || (p < mid && keys[src[p]] <= keys[src[q]])) {
+                dst[i] = src[p++];
+            } else {
+                dst[i] = src[q++];
+            }
+        }
+    }
+
+    /**
+     * Sorts the rows added since the last call and merges them into the name order,
+     * dropping dead rows. Comparing names is the slow part of a query, so it is done
+     * a batch at a time as rows arrive rather than all at once when one is asked for.
+     */
+    private void mergeNameOrder() {
+        if (sortedUpTo == count) return;
+
+        Integer[] added = new Integer[count - sortedUpTo];
+        int n = 0;
+        for (int row = sortedUpTo; row < count; row++) {
+            if (items[row] != null) added[n++] = row;
+        }
+        Arrays.sort(added, 0, n, this::compareNames);
+
+        int[] merged = new int[byName.length + n];
+        int i = 0, j = 0, k = 0;
+        while (i < byName.length || j < n) {
+            if (i < byName.length && items[byName[i]] == null) {
+                i++;
+            } else if (j == n || (i < byName.length && compareNames(byName[i], added[j]) <= 0)) {
+                merged[k++] = byName[i++];
+            } else {
+                merged[k++] = added[j++];
+            }
+        }
+        byName = Arrays.copyOf(merged, k);
+        sortedUpTo = count;
+    }
+
+    private void grow() {
+        int capacity = items.length * 2;
+        items = Arrays.copyOf(items, capacity);
+        captured = Arrays.copyOf(captured, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        widths = Arrays.copyOf(widths, capacity);
+        heights = Arrays.copyOf(heights, capacity);
+        makes = Arrays.copyOf(makes, capacity);
+        models = Arrays.copyOf(models, capacity);
+    }
+
+    // Moves live rows down over tombstones once they outnumber the live ones
+    private void compactIfStale() {
+        if (count - rows.size() <= Math.max(1024, rows.size())) return;
+
+        int[] live = rows.values().stream().mapToInt(Integer::intValue).sorted().toArray();
+        for (int i = 0; i < live.length; i++) {
+            int row = live[i];
+            items[i] = items[row];
+            captured[i] = captured[row];
+            sizes[i] = sizes[row];
+            widths[i] = widths[row];
+            heights[i] = heights[row];
+            makes[i] = makes[row];
+            models[i] = models[row];
+            rows.put(key.apply(cast(items[i])), i);
+        }
+        Arrays.fill(items, live.length, count, null);
+        count = live.length;
+        byName = new int[0]; // Row numbers changed
+        sortedUpTo = 0;
+    }
+
+    private int compareNames(int rowA, int rowB) {
+        return nameOrder.compare(cast(items[rowA]), cast(items[rowB]));
+    }
+
+    @SuppressWarnings("unchecked")
+    private T cast(Object item) {
+        return (T) item;
+    }
+
+    /** Distinct strings of one column, each stored once and referred to by code. */
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private final List<String> lowerCase = new ArrayList<>();
+        private int[] ranks; // Alphabetical rank by code, rebuilt after additions
+
+        // Code of the value, adding it if new; -1 for null
+        int code(String value) {
+            if (value == null) return -1;
+            Integer code = codes.get(value);
+            if (code != null) return code;
+            codes.put(value, values.size());
+            values.add(value);
+            lowerCase.add(value.toLowerCase(Locale.ROOT));
+            ranks = null;
+            return values.size() - 1;
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        String lowerCase(int code) {
+            return lowerCase.get(code);
+        }
+
+        int[] ranks() {
+            if (ranks != null) return ranks;
+            Integer[] order = new Integer[values.size()];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> lowerCase.get(a).compareTo(lowerCase.get(b)));
+            ranks = new int[order.length];
+            for (int rank = 0; rank < order.length; rank++) {
+                ranks[order[rank]] = rank;
+            }
+            return ranks;
+        }
+    }
+}
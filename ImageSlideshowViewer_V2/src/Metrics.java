@@ -0,0 +1,176 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Latency histograms and counters for the display pipeline. Recording is a couple
+ * of atomic adds, so it stays on in production; the overlay and the periodic dump
+ * only read. All values are cumulative since startup.
+ */
+final class Metrics {
+    static final Histogram FIRST = new Histogram("first");       // Navigation until anything of the slide is shown
+    static final Histogram SLIDE = new Histogram("slide");       // Navigation until the final raster is shown
+    static final Histogram DECODE = new Histogram("decode");     // Full and subsampled decodes
+    static final Histogram REGION = new Histogram("region");     // Tile decodes
+    static final Histogram EDIT = new Histogram("edit");         // ImageEdits.render
+    static final Histogram METADATA = new Histogram("metadata"); // EXIF reads
+    static final Histogram PAINT = new Histogram("paint");       // ImagePanel.paintComponent
+
+    static final Histogram[] ALL = {FIRST, SLIDE, DECODE, REGION, EDIT, METADATA, PAINT};
+
+    static final LongAdder BYTES_DECODED = new LongAdder();
+
+    /**
+     * Log-linear histogram of microsecond values in the style of HdrHistogram:
+     * 8 buckets per power of two, so percentiles are within 12.5%, in a fixed array.
+     */
+    static final class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+
+        final String name;
+        private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_COUNT);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalMicros = new LongAdder();
+        private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+        Histogram(String name) {
+            this.name = name;
+        }
+
+        // Records the time since startNanos (a System.nanoTime value)
+        void recordSince(long startNanos) {
+            record((System.nanoTime() - startNanos) / 1000);
+        }
+
+        void record(long micros) {
+            micros = Math.max(0, micros);
+            counts.incrementAndGet(bucket(micros));
+            count.increment();
+            totalMicros.add(micros);
+            maxMicros.accumulate(micros);
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        double meanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : totalMicros.sum() / 1000.0 / n;
+        }
+
+        double maxMillis() {
+            return maxMicros.get() / 1000.0;
+        }
+
+        // Upper bound of the bucket holding the given percentile, in milliseconds
+        double percentileMillis(double percentile) {
+            long n = count.sum();
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(n * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= rank) return Math.min(upperBound(i), maxMicros.get()) / 1000.0;
+            }
+            return maxMillis();
+        }
+
+        private static int bucket(long value) {
+            if (value < SUB_COUNT) return (int) value;
+            int exp = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+            return ((exp - SUB_BITS + 1) << SUB_BITS) + sub;
+        }
+
+        private static long upperBound(int bucket) {
+            if (bucket < SUB_COUNT) return bucket;
+            int exp = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+            long width = 1L << (exp - SUB_BITS);
+            return ((SUB_COUNT + (bucket & (SUB_COUNT - 1))) << (exp - SUB_BITS)) + width - 1;
+        }
+
+        String summary() {
+            return String.format("%-8s n=%-6d p50 %7.1f  p99 %7.1f  max %7.1f ms", name, count(),
+                    percentileMillis(50), percentileMillis(99), maxMillis());
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Appends all histograms plus the given gauges to {@code file} every
+     * {@code seconds}: one JSON object per line for .json files, CSV rows otherwise.
+     */
+    static void startDump(File file, int seconds, Supplier<Map<String, Long>> gauges) {
+        boolean json = file.getName().toLowerCase().endsWith(".json");
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(() -> {
+            try (Writer out = new FileWriter(file, true)) {
+                long now = System.currentTimeMillis();
+                if (json) {
+                    out.write(toJson(now, gauges.get()));
+                } else {
+                    if (file.length() == 0) {
+                        out.write("time,metric,count,mean_ms,p50_ms,p90_ms,p99_ms,max_ms\n");
+                    }
+                    out.write(toCsv(now, gauges.get()));
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Failed to write metrics: " + e.getMessage());
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    private static String toJson(long now, Map<String, Long> gauges) {
+        StringBuilder sb = new StringBuilder("{\"time\":").append(now);
+        for (Histogram h : ALL) {
+            sb.append(String.format(Locale.ROOT, ",\"%s\":{\"count\":%d,\"mean\":%.3f,\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"max\":%.3f}",
+                    h.name, h.count(), h.meanMillis(), h.percentileMillis(50), h.percentileMillis(90),
+                    h.percentileMillis(99), h.maxMillis()));
+        }
+        for (Map.Entry<String, Long> gauge : gauges.entrySet()) {
+            sb.append(",\"").append(gauge.getKey()).append("\":").append(gauge.getValue());
+        }
+        return sb.append("}\n").toString();
+    }
+
+    // Gauges go in the count column with empty latency columns
+    private static String toCsv(long now, Map<String, Long> gauges) {
+        StringBuilder sb = new StringBuilder();
+        for (Histogram h : ALL) {
+            sb.append(String.format(Locale.ROOT, "%d,%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f%n", now, h.name, h.count(), h.meanMillis(),
+                    h.percentileMillis(50), h.percentileMillis(90), h.percentileMillis(99), h.maxMillis()));
+        }
+        for (Map.Entry<String, Long> gauge : gauges.entrySet()) {
+            sb.append(now).append(',').append(gauge.getKey()).append(',').append(gauge.getValue()).append(",,,,,\n");
+        }
+        return sb.toString();
+    }
+
+    // Counters shown next to the histograms; the viewer adds its cache figures
+    static Map<String, Long> gauges() {
+        Runtime rt = Runtime.getRuntime();
+        Map<String, Long> gauges = new LinkedHashMap<>();
+        gauges.put("bytes_decoded", BYTES_DECODED.sum());
+        gauges.put("heap_used", rt.totalMemory() - rt.freeMemory());
+        return gauges;
+    }
+}
@@ -0,0 +1,274 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Sorted playlist that loader threads and the EDT can use at the same time.
+ * Writers are serialized and publish a new immutable snapshot (copy-on-write),
+ * so readers get O(1) random access to a consistent list without locking.
+ * The current position is part of the snapshot and follows its entry when
+ * other entries are inserted or removed before it.
+ */
+class Playlist<T> {
+    /** Immutable view of the playlist at one version. */
+    static final class Snapshot<T> {
+        private final Object[] items;
+        final int current;
+        final long version;
+        private volatile Map<Object, Integer> positions; // Key to index, built on first lookup
+
+        private Snapshot(Object[] items, int current, long version) {
+            this.items = items;
+            this.current = current;
+            this.version = version;
+        }
+
+        @SuppressWarnings("unchecked")
+        T get(int index) {
+            return (T) items[index];
+        }
+
+        int size() {
+            return items.length;
+        }
+
+        boolean isEmpty() {
+            return items.length == 0;
+        }
+
+        // Entry at the current position, or null when empty
+        T current() {
+            return items.length == 0 ? null : get(current);
+        }
+    }
+
+    private Comparator<? super T> order; // Changed only by reset(), under the lock
+    private final Function<? super T, ?> key;
+    private volatile Snapshot<T> snapshot = new Snapshot<>(new Object[0], 0, 0);
+
+    /**
+     * @param order sort order of the entries
+     * @param key   identity of an entry; an upsert with an equal key replaces the old entry
+     */
+    Playlist(Comparator<? super T> order, Function<? super T, ?> key) {
+        this.order = order;
+        this.key = key;
+    }
+
+    Snapshot<T> snapshot() {
+        return snapshot;
+    }
+
+    int size() {
+        return snapshot.size();
+    }
+
+    boolean isEmpty() {
+        return snapshot.isEmpty();
+    }
+
+    T get(int index) {
+        return snapshot.get(index);
+    }
+
+    int currentIndex() {
+        return snapshot.current;
+    }
+
+    T current() {
+        return snapshot.current();
+    }
+
+    synchronized void setCurrent(int index) {
+        Snapshot<T> s = snapshot;
+        if (s.isEmpty()) return;
+        publish(s.items, Math.floorMod(index, s.size()));
+    }
+
+    // Moves the current position by delta, wrapping around; returns the new entry or null
+    synchronized T step(int delta) {
+        Snapshot<T> s = snapshot;
+        if (s.isEmpty()) return null;
+        publish(s.items, Math.floorMod(s.current + delta, s.size()));
+        return snapshot.current();
+    }
+
+    // Inserts in sort order, or replaces the entry with the same key. Returns its index
+    synchronized int upsert(T item) {
+        Snapshot<T> s = snapshot;
+        int pos = search(s, item);
+        if (pos >= 0) {
+            Object[] items = s.items.clone();
+            items[pos] = item;
+            publish(items, s.current);
+            return pos;
+        }
+
+        // An entry whose sort key changed is not where the search looked: take it out first
+        Object k = key.apply(item);
+        boolean wasCurrent = false;
+        for (int i = 0; i < s.size(); i++) {
+            if (key.apply(s.get(i)).equals(k)) {
+                Object[] rest = new Object[s.size() - 1];
+                System.arraycopy(s.items, 0, rest, 0, i);
+                System.arraycopy(s.items, i + 1, rest, i, rest.length - i);
+                wasCurrent = i == s.current;
+                s = new Snapshot<>(rest, i < s.current ? s.current - 1 : s.current, s.version);
+                pos = search(s, item);
+                break;
+            }
+        }
+
+        int insert = -pos - 1;
+        Object[] items = new Object[s.size() + 1];
+        System.arraycopy(s.items, 0, items, 0, insert);
+        items[insert] = item;
+        System.arraycopy(s.items, insert, items, insert + 1, s.size() - insert);
+        if (wasCurrent) {
+            publish(items, insert);
+        } else {
+            publish(items, !s.isEmpty() && insert <= s.current ? s.current + 1 : s.current);
+        }
+        return insert;
+    }
+
+    /**
+     * Upserts a batch with a single copy of the backing array: replacements in place,
+     * then one merge pass for the new entries. Loader threads call this concurrently.
+     */
+    synchronized void upsertAll(List<? extends T> batch) {
+        Snapshot<T> s = snapshot;
+        Object[] base = s.items.clone();
+        Map<Object, T> added = new HashMap<>();
+        for (T item : batch) {
+            int pos = search(s, item);
+            if (pos >= 0) {
+                base[pos] = item; // Same key, so the sort position is unchanged
+            } else {
+                added.put(key.apply(item), item);
+            }
+        }
+        if (added.isEmpty()) {
+            publish(base, s.current);
+            return;
+        }
+
+        // Entries whose sort key changed are not where the search looked: take them out before
+        // merging. The position stays on the current entry, or moves with its replacement.
+        Object current = s.isEmpty() ? null : base[s.current];
+        Object[] kept = new Object[base.length];
+        int n = 0;
+        for (int i = 0; i < base.length; i++) {
+            T replacement = added.get(key.apply(at(base, i)));
+            if (replacement == null) {
+                kept[n++] = base[i];
+            } else if (base[i] == current) {
+                current = replacement;
+            }
+        }
+
+        List<T> sorted = new ArrayList<>(added.values());
+        sorted.sort(order);
+        Object[] merged = new Object[n + sorted.size()];
+        int i = 0, j = 0, k = 0, newCurrent = 0;
+        while (i < n || j < sorted.size()) {
+            Object next = j < sorted.size() && (i == n || order.compare(sorted.get(j), at(kept, i)) < 0)
+                    ? sorted.get(j++) : kept[i++];
+            if (next == current) newCurrent = k;
+            merged[k++] = next;
+        }
+        publish(merged, newCurrent);
+    }
+
+    /**
+     * Replaces every entry and the sort order at once, for re-sorting or filtering.
+     * The items must already be in the new order. The current position follows its
+     * entry if it is still present, otherwise it goes to the start.
+     */
+    synchronized void reset(List<? extends T> items, Comparator<? super T> newOrder) {
+        Snapshot<T> s = snapshot;
+        Object currentKey = s.isEmpty() ? null : key.apply(s.current());
+        int current = 0;
+        for (int i = 0; currentKey != null && i < items.size(); i++) {
+            if (key.apply(items.get(i)).equals(currentKey)) {
+                current = i;
+                break;
+            }
+        }
+        order = newOrder;
+        publish(items.toArray(), current);
+    }
+
+    // Removes matching entries; the current position stays on its entry or its successor
+    synchronized int removeIf(Predicate<? super T> filter) {
+        Snapshot<T> s = snapshot;
+        Object[] kept = new Object[s.size()];
+        int count = 0, current = s.current;
+        for (int i = 0; i < s.size(); i++) {
+            if (filter.test(s.get(i))) {
+                if (i < s.current) current--;
+            } else {
+                kept[count++] = s.items[i];
+            }
+        }
+        if (count == s.size()) return 0;
+
+        publish(Arrays.copyOf(kept, count), count == 0 ? 0 : Math.min(current, count - 1));
+        return s.size() - count;
+    }
+
+    // Display position of the entry with this key in the snapshot, or -1
+    int indexOf(Snapshot<T> s, Object itemKey) {
+        Map<Object, Integer> positions = s.positions;
+        if (positions == null) {
+            positions = new HashMap<>(s.size() * 2);
+            for (int i = 0; i < s.size(); i++) {
+                positions.put(key.apply(s.get(i)), i);
+            }
+            s.positions = positions;
+        }
+        Integer index = positions.get(itemKey);
+        return index != null ? index : -1;
+    }
+
+    // Binary search by sort order; among ties, looks for an equal key
+    private int search(Snapshot<T> s, T item) {
+        int lo = 0, hi = s.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = order.compare(s.get(mid), item);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                Object k = key.apply(item);
+                for (int i = mid; i >= 0 && order.compare(s.get(i), item) == 0; i--) {
+                    if (key.apply(s.get(i)).equals(k)) return i;
+                }
+                for (int i = mid + 1; i < s.size() && order.compare(s.get(i), item) == 0; i++) {
+                    if (key.apply(s.get(i)).equals(k)) return i;
+                }
+                return -(mid + 1);
+            }
+        }
+        return -(lo + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T at(Object[] items, int index) {
+        return (T) items[index];
+    }
+
+    private void publish(Object[] items, int current) {
+        Snapshot<T> previous = snapshot;
+        Snapshot<T> next = new Snapshot<>(items, current, previous.version + 1);
+        if (items == previous.items) next.positions = previous.positions; // Only the position moved
+        snapshot = next;
+    }
+}
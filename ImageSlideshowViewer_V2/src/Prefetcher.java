@@ -0,0 +1,61 @@
+import java.awt.image.BufferedImage;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Decodes slides on background threads ahead of playback.
+ * Requests are de-duplicated by key, and work that falls out of the
+ * prefetch window is cancelled before it starts decoding.
+ */
+class Prefetcher {
+    private final ExecutorService executor;
+    private final Map<String, CompletableFuture<BufferedImage>> inFlight = new HashMap<>();
+
+    Prefetcher(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "slide-prefetch-" + count.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+    }
+
+    synchronized CompletableFuture<BufferedImage> request(String key, Supplier<BufferedImage> loader) {
+        CompletableFuture<BufferedImage> future = inFlight.get(key);
+        if (future != null && !future.isCancelled()) return future;
+
+        CompletableFuture<BufferedImage> created = CompletableFuture.supplyAsync(loader, executor);
+        inFlight.put(key, created);
+        created.whenComplete((img, ex) -> remove(key, created));
+        return created;
+    }
+
+    // Cancels every pending request whose key is not in the new window
+    synchronized void retainOnly(Collection<String> keys) {
+        Iterator<Map.Entry<String, CompletableFuture<BufferedImage>>> it = inFlight.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, CompletableFuture<BufferedImage>> entry = it.next();
+            if (!keys.contains(entry.getKey())) {
+                // Remove first: cancelling completes the future, which runs remove() on this thread
+                it.remove();
+                entry.getValue().cancel(false);
+            }
+        }
+    }
+
+    private synchronized void remove(String key, CompletableFuture<BufferedImage> future) {
+        inFlight.remove(key, future);
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
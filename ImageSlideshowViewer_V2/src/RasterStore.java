@@ -0,0 +1,263 @@
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Decoded rasters kept outside the Java heap, in the most compact byte layout for
+ * each image: 1 byte per pixel for grayscale, 3 for opaque colour, 4 with alpha.
+ * Memory comes from a few large direct buffers carved into fixed-size blocks; an
+ * entry owns a list of blocks, and evicting it puts them straight back on the free
+ * list, so nothing waits on the garbage collector and the heap holds only the small
+ * index. Reads return a fresh heap BufferedImage of the matching compact type.
+ */
+final class RasterStore {
+    private static final int BLOCK_BYTES = 256 * 1024;
+    private static final int CHUNK_BLOCKS = 256; // 64 MB per direct buffer
+
+    private static final class Entry {
+        final int width, height, type;
+        final long bytes;
+        final int[] blocks;
+        boolean cancelled; // Removed while its pixels were still being written
+
+        Entry(int width, int height, int type, long bytes, int[] blocks) {
+            this.width = width;
+            this.height = height;
+            this.type = type;
+            this.bytes = bytes;
+            this.blocks = blocks;
+        }
+    }
+
+    private int maxBlocks; // Lowered if direct memory runs out first
+    private final List<ByteBuffer> chunks = new CopyOnWriteArrayList<>(); // Read by puts outside the lock
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, Entry> pending = new HashMap<>(); // Reserved, pixels still being written
+    private int[] freeBlocks = new int[0];
+    private int freeCount = 0;
+    private int allocatedBlocks = 0;
+    private long usedBytes = 0;
+
+    RasterStore(long budgetBytes) {
+        this.maxBlocks = (int) Math.min(Integer.MAX_VALUE, budgetBytes / BLOCK_BYTES);
+    }
+
+    synchronized long getBudgetBytes() {
+        return (long) maxBlocks * BLOCK_BYTES;
+    }
+
+    synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    // Whether any stored or still-writing key starts with prefix
+    synchronized boolean containsPrefix(String prefix) {
+        for (String key : entries.keySet()) {
+            if (key.startsWith(prefix)) return true;
+        }
+        for (String key : pending.keySet()) {
+            if (key.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    // Compact type the image is stored as
+    static int compactType(BufferedImage img) {
+        ColorModel cm = img.getColorModel();
+        if (cm.hasAlpha()) return BufferedImage.TYPE_4BYTE_ABGR;
+        if (cm.getColorSpace().getType() == ColorSpace.TYPE_GRAY) return BufferedImage.TYPE_BYTE_GRAY;
+        return BufferedImage.TYPE_3BYTE_BGR;
+    }
+
+    private static int bytesPerPixel(int type) {
+        switch (type) {
+            case BufferedImage.TYPE_BYTE_GRAY: return 1;
+            case BufferedImage.TYPE_3BYTE_BGR: return 3;
+            default: return 4;
+        }
+    }
+
+    /**
+     * Copies the image in, evicting least-recently-used entries to make room, and
+     * returns the keys evicted. An image larger than the whole store is not kept.
+     */
+    List<String> put(String key, BufferedImage img) {
+        int type = compactType(img);
+        int w = img.getWidth(), h = img.getHeight();
+        long bytes = (long) w * h * bytesPerPixel(type);
+        int blockCount = (int) ((bytes + BLOCK_BYTES - 1) / BLOCK_BYTES);
+
+        // Reserve blocks under the lock, fill them outside it, then publish
+        List<String> evicted = new ArrayList<>();
+        Entry entry;
+        synchronized (this) {
+            remove(key);
+            while (freeCount < blockCount) {
+                if (allocatedBlocks < maxBlocks) {
+                    allocateChunk();
+                    continue;
+                }
+                // Too large for the whole store, or the rest is reserved by puts still writing
+                Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+                if (blockCount > maxBlocks || !it.hasNext()) return evicted;
+                Map.Entry<String, Entry> eldest = it.next();
+                it.remove();
+                usedBytes -= eldest.getValue().bytes;
+                release(eldest.getValue());
+                evicted.add(eldest.getKey());
+            }
+            int[] blocks = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                blocks[i] = freeBlocks[--freeCount];
+            }
+            entry = new Entry(w, h, type, bytes, blocks);
+            pending.put(key, entry);
+        }
+
+        write(entry, img);
+
+        synchronized (this) {
+            pending.remove(key, entry);
+            if (entry.cancelled) {
+                release(entry);
+            } else {
+                entries.put(key, entry);
+                usedBytes += bytes;
+            }
+        }
+        return evicted;
+    }
+
+    // A heap copy of the stored raster, or null
+    synchronized BufferedImage get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) return null;
+
+        BufferedImage img = new BufferedImage(entry.width, entry.height, entry.type);
+        WritableRaster raster = img.getRaster();
+        byte[] row = new byte[entry.width * bytesPerPixel(entry.type)];
+        long offset = 0;
+        for (int y = 0; y < entry.height; y++) {
+            transfer(entry, offset, row, false);
+            // Data elements keep the image managed, unlike writing to its backing array
+            raster.setDataElements(0, y, entry.width, 1, row);
+            offset += row.length;
+        }
+        return img;
+    }
+
+    synchronized void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            usedBytes -= entry.bytes;
+            release(entry);
+        }
+        Entry writing = pending.remove(key);
+        if (writing != null) {
+            writing.cancelled = true; // put() frees its blocks once it has finished writing
+        }
+    }
+
+    synchronized void clear() {
+        for (String key : new ArrayList<>(entries.keySet())) {
+            remove(key);
+        }
+        for (String key : new ArrayList<>(pending.keySet())) {
+            remove(key);
+        }
+    }
+
+    private void write(Entry entry, BufferedImage img) {
+        int w = entry.width;
+        byte[] row = new byte[w * bytesPerPixel(entry.type)];
+        long offset = 0;
+        if (img.getType() == entry.type) {
+            for (int y = 0; y < entry.height; y++) {
+                img.getRaster().getDataElements(0, y, w, 1, row);
+                transfer(entry, offset, row, true);
+                offset += row.length;
+            }
+            return;
+        }
+
+        // Other layouts convert a row at a time through a one-row image of the compact type
+        BufferedImage converter = new BufferedImage(w, 1, entry.type);
+        int[] argb = new int[w];
+        for (int y = 0; y < entry.height; y++) {
+            img.getRGB(0, y, w, 1, argb, 0, w);
+            converter.setRGB(0, 0, w, 1, argb, 0, w);
+            converter.getRaster().getDataElements(0, 0, w, 1, row);
+            transfer(entry, offset, row, true);
+            offset += row.length;
+        }
+    }
+
+    // Copies bytes between the array and the entry's blocks, starting at the entry offset
+    private void transfer(Entry entry, long offset, byte[] bytes, boolean toStore) {
+        int done = 0;
+        while (done < bytes.length) {
+            int block = entry.blocks[(int) (offset / BLOCK_BYTES)];
+            int within = (int) (offset % BLOCK_BYTES);
+            int n = Math.min(bytes.length - done, BLOCK_BYTES - within);
+
+            ByteBuffer chunk = chunks.get(block / CHUNK_BLOCKS);
+            int index = (block % CHUNK_BLOCKS) * BLOCK_BYTES + within;
+            if (toStore) {
+                chunk.put(index, bytes, done, n);
+            } else {
+                chunk.get(index, bytes, done, n);
+            }
+            done += n;
+            offset += n;
+        }
+    }
+
+    // Adds the next direct buffer's blocks to the free list
+    private void allocateChunk() {
+        // Only the last chunk can be short, so block / CHUNK_BLOCKS still finds the chunk
+        int blocks = Math.min(CHUNK_BLOCKS, maxBlocks - allocatedBlocks);
+        try {
+            chunks.add(ByteBuffer.allocateDirect(blocks * BLOCK_BYTES));
+        } catch (OutOfMemoryError e) {
+            // -XX:MaxDirectMemorySize is below the budget; keep what has been allocated
+            System.err.println("Off-heap raster store limited to " + ((long) allocatedBlocks * BLOCK_BYTES >> 20)
+                    + " MB: " + e.getMessage());
+            maxBlocks = allocatedBlocks;
+            return;
+        }
+        if (freeBlocks.length < freeCount + blocks) {
+            freeBlocks = Arrays.copyOf(freeBlocks, freeCount + blocks);
+        }
+        for (int i = blocks - 1; i >= 0; i--) {
+            freeBlocks[freeCount++] = allocatedBlocks + i;
+        }
+        allocatedBlocks += blocks;
+    }
+
+    private void release(Entry entry) {
+        if (freeBlocks.length < freeCount + entry.blocks.length) {
+            freeBlocks = Arrays.copyOf(freeBlocks, freeCount + entry.blocks.length);
+        }
+        for (int block : entry.blocks) {
+            freeBlocks[freeCount++] = block;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+/**
+ * Holds the current slide pre-rendered at its on-screen scale in a screen-compatible
+ * surface, so repaints during panning and fades are a plain blit instead of a scaled,
+ * filtered draw from an arbitrary image type. Opaque slides use a VolatileImage;
+ * translucent ones a compatible BufferedImage. The surface is re-rendered only when
+ * the raster, the transform (zoom and edits) or the output size changes.
+ */
+class RenderCache {
+    // Larger outputs are drawn directly rather than held as a surface
+    static final long MAX_PIXELS = 8L * 1024 * 1024;
+
+    private VolatileImage volatileImage;
+    private BufferedImage compatibleImage;
+
+    // Key of the rendered contents
+    private BufferedImage raster;
+    private AffineTransform transform;
+    private Color background;
+
+    /**
+     * Returns {@code raster} drawn through {@code rasterToImage} onto a w × h surface,
+     * or null when the slide can't be cached and must be drawn directly this frame.
+     */
+    Image get(GraphicsConfiguration gc, BufferedImage raster, AffineTransform rasterToImage,
+              int w, int h, Color background) {
+        if (gc == null || w <= 0 || h <= 0 || (long) w * h > MAX_PIXELS) return null;
+
+        boolean stale = raster != this.raster || !rasterToImage.equals(transform)
+                || !background.equals(this.background);
+
+        if (raster.getColorModel().hasAlpha()) {
+            volatileImage = release(volatileImage);
+            if (compatibleImage == null || compatibleImage.getWidth() != w || compatibleImage.getHeight() != h) {
+                compatibleImage = gc.createCompatibleImage(w, h, Transparency.TRANSLUCENT);
+                stale = true;
+            }
+            if (stale) {
+                render(compatibleImage.createGraphics(), w, h, raster, rasterToImage, null);
+            }
+            remember(raster, rasterToImage, background);
+            return compatibleImage;
+        }
+
+        compatibleImage = null;
+        if (volatileImage == null || volatileImage.getWidth() != w || volatileImage.getHeight() != h) {
+            volatileImage = release(volatileImage);
+            volatileImage = gc.createCompatibleVolatileImage(w, h, Transparency.OPAQUE);
+            stale = true;
+        }
+
+        int status = volatileImage.validate(gc);
+        if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+            volatileImage.flush();
+            volatileImage = gc.createCompatibleVolatileImage(w, h, Transparency.OPAQUE);
+            stale = true;
+        } else if (status == VolatileImage.IMAGE_RESTORED) {
+            stale = true;
+        }
+
+        if (stale) {
+            render(volatileImage.createGraphics(), w, h, raster, rasterToImage, background);
+        }
+        if (volatileImage.contentsLost()) {
+            this.raster = null; // Surface lost while rendering; draw directly and retry next frame
+            return null;
+        }
+        remember(raster, rasterToImage, background);
+        return volatileImage;
+    }
+
+    // Forces a re-render, for a raster whose pixels were rewritten in place
+    void invalidate() {
+        raster = null;
+    }
+
+    private void remember(BufferedImage raster, AffineTransform rasterToImage, Color background) {
+        this.raster = raster;
+        this.transform = new AffineTransform(rasterToImage);
+        this.background = background;
+    }
+
+    private static void render(Graphics2D g, int w, int h, BufferedImage raster,
+                               AffineTransform rasterToImage, Color background) {
+        if (background != null) {
+            g.setColor(background);
+            g.fillRect(0, 0, w, h);
+        } else {
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, w, h);
+            g.setComposite(AlphaComposite.SrcOver);
+        }
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(raster, rasterToImage, null);
+        g.dispose();
+    }
+
+    private static VolatileImage release(VolatileImage image) {
+        if (image != null) {
+            image.flush();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,79 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws one slide: a raster decoded at 1/subsampling of the source, with the edits
+ * applied, zoomed and centred in the view. When the zoomed slide fits the RenderCache
+ * the repaint is a blit of a pre-scaled, screen-compatible copy; otherwise only the
+ * cropped part of the raster is drawn through the full transform. ImagePanel paints
+ * with it, and so does the paint benchmark.
+ */
+final class SlidePainter {
+    private final RenderCache renderCache = new RenderCache();
+
+    /**
+     * Paints the slide and returns the source-to-screen transform, for drawing tiles on
+     * top. With direct set the cache is skipped, as tiles need the coarse raster drawn
+     * through the transform underneath them.
+     */
+    AffineTransform paint(Graphics2D g, GraphicsConfiguration gc, Dimension view, Color background,
+                          BufferedImage raster, int subsampling, int sourceWidth, int sourceHeight,
+                          ImageEdits edits, double zoom, Point offset, boolean direct) {
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+
+        // Calculate scaled dimensions of the edited image
+        Dimension out = edits.outputSize(sourceWidth, sourceHeight);
+        double imgW = out.width * zoom;
+        double imgH = out.height * zoom;
+
+        // Center image
+        int x = (int) ((view.width - imgW) / 2 + offset.x);
+        int y = (int) ((view.height - imgH) / 2 + offset.y);
+
+        // Source pixels -> screen: edits, then zoom, then position
+        AffineTransform sourceToScreen = AffineTransform.getTranslateInstance(x, y);
+        sourceToScreen.scale(zoom, zoom);
+        sourceToScreen.concatenate(edits.sourceToOutput(sourceWidth, sourceHeight));
+
+        Rectangle crop = edits.cropBounds(sourceWidth, sourceHeight);
+        int s = subsampling;
+
+        AffineTransform rasterToImage = AffineTransform.getScaleInstance(zoom, zoom);
+        rasterToImage.concatenate(edits.sourceToOutput(sourceWidth, sourceHeight));
+        rasterToImage.scale(s, s);
+        Image rendered = direct ? null : renderCache.get(gc, raster, rasterToImage,
+                (int) Math.ceil(imgW), (int) Math.ceil(imgH), background);
+
+        if (rendered != null) {
+            g.drawImage(rendered, x, y, null);
+        } else {
+            // Draw only the cropped part of the raster; getSubimage shares pixels
+            int rx = Math.min(crop.x / s, raster.getWidth() - 1);
+            int ry = Math.min(crop.y / s, raster.getHeight() - 1);
+            int rw = Math.max(1, Math.min((crop.x + crop.width + s - 1) / s, raster.getWidth()) - rx);
+            int rh = Math.max(1, Math.min((crop.y + crop.height + s - 1) / s, raster.getHeight()) - ry);
+            BufferedImage part = rw == raster.getWidth() && rh == raster.getHeight()
+                    ? raster : raster.getSubimage(rx, ry, rw, rh);
+
+            AffineTransform rasterToScreen = new AffineTransform(sourceToScreen);
+            rasterToScreen.scale(s, s);
+            rasterToScreen.translate(rx, ry);
+            g.drawImage(part, rasterToScreen, null);
+        }
+        return sourceToScreen;
+    }
+
+    // Drops the pre-rendered surface, e.g. when the slide's pixels change in place
+    void invalidate() {
+        renderCache.invalidate();
+    }
+}
@@ -0,0 +1,262 @@
+import javax.swing.JComponent;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Scrollable overview of the playlist, as a single-row filmstrip or a wrapping grid of
+ * fixed-size cells. Like a JList with a fixed cell size it is virtualized: there is one
+ * component however long the playlist, its size is computed from the cell count, and a
+ * paint only touches the cells in the clip. Thumbnails load on background threads at
+ * the cell size into a small byte-bounded cache; loads for cells scrolled out of view
+ * are cancelled before they start, so a fast fling only decodes where it stops.
+ */
+class ThumbnailBrowser extends JComponent implements Scrollable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int GAP = 4;
+    private static final int LOOKAHEAD_ROWS = 1; // Rows past each edge of the view loaded ahead
+    private static final Color CELL = new Color(48, 48, 48);
+    private static final Color CURRENT = new Color(80, 160, 255);
+
+    /** The items shown; called on the event dispatch thread. */
+    interface Source {
+        int size();
+
+        int current();
+
+        // Stable across playlist edits, so a cached thumbnail follows its file
+        String key(int index);
+
+        // Produces the item's thumbnail fitting a thumbSize square; runs on a loader thread
+        Supplier<BufferedImage> loader(int index, int thumbSize);
+
+        // Double-clicks open the item; single clicks select it
+        void select(int index, boolean open);
+    }
+
+    private final Source source;
+    private final boolean grid;
+    private final int cellSize;
+    private final ImageCache thumbnails;
+    private final Prefetcher loader;
+
+    ThumbnailBrowser(Source source, boolean grid, int cellSize, ImageCache thumbnails, int threads) {
+        this.source = source;
+        this.grid = grid;
+        this.cellSize = cellSize;
+        this.thumbnails = thumbnails;
+        this.loader = new Prefetcher(threads);
+        setOpaque(true);
+        setBackground(Color.DARK_GRAY);
+
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int index = indexAt(e.getX(), e.getY());
+                if (index >= 0 && SwingUtilities.isLeftMouseButton(e)) {
+                    source.select(index, e.getClickCount() >= 2);
+                }
+            }
+        });
+    }
+
+    // The playlist or the current item changed
+    void refresh() {
+        revalidate();
+        repaint();
+    }
+
+    // Scrolls the current item into view, once a pending refresh has laid the cells out
+    void showCurrent() {
+        SwingUtilities.invokeLater(() -> {
+            int current = source.current();
+            if (current >= 0 && current < source.size()) {
+                scrollRectToVisible(cellBounds(current));
+            }
+        });
+    }
+
+    // Scales the image to fit a size × size cell, halving first so large sources don't alias
+    static BufferedImage fit(BufferedImage img, int size) {
+        double scale = Math.min(1.0, (double) size / Math.max(img.getWidth(), img.getHeight()));
+        int w = Math.max(1, (int) Math.round(img.getWidth() * scale));
+        int h = Math.max(1, (int) Math.round(img.getHeight() * scale));
+        int type = img.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = img;
+        do {
+            int stepW = Math.max(w, current.getWidth() / 2), stepH = Math.max(h, current.getHeight() / 2);
+            BufferedImage next = new BufferedImage(stepW, stepH, type);
+            Graphics2D g = next.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(current, 0, 0, stepW, stepH, null);
+            g.dispose();
+            current = next;
+        } while (current.getWidth() > w || current.getHeight() > h);
+        return current;
+    }
+
+    private int columns() {
+        if (!grid) return Math.max(1, source.size());
+        int width = getParent() != null ? getParent().getWidth() : getWidth();
+        return Math.max(1, (width - GAP) / (cellSize + GAP));
+    }
+
+    private Rectangle cellBounds(int index) {
+        int columns = columns();
+        return new Rectangle(GAP + index % columns * (cellSize + GAP), GAP + index / columns * (cellSize + GAP),
+                cellSize, cellSize);
+    }
+
+    private int indexAt(int x, int y) {
+        int column = (x - GAP) / (cellSize + GAP), row = (y - GAP) / (cellSize + GAP);
+        int columns = columns();
+        if (x < GAP || y < GAP || column >= columns) return -1;
+        int index = row * columns + column;
+        return index < source.size() && cellBounds(index).contains(x, y) ? index : -1;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(getBackground());
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        int size = source.size();
+        int columns = columns(), step = cellSize + GAP;
+        int current = source.current();
+
+        // Only the cells the clip touches are drawn: thumbnails are pre-scaled, so each is one blit
+        int firstRow = Math.max(0, (clip.y - GAP) / step), lastRow = (clip.y + clip.height) / step;
+        int firstColumn = Math.max(0, (clip.x - GAP) / step);
+        int lastColumn = Math.min(columns - 1, (clip.x + clip.width) / step);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int index = row * columns + column;
+                if (index >= size) break;
+                paintCell(g, index, index == current);
+            }
+        }
+        requestVisible();
+    }
+
+    private void paintCell(Graphics g, int index, boolean isCurrent) {
+        Rectangle r = cellBounds(index);
+        BufferedImage thumb = thumbnails.get(thumbKey(source.key(index)));
+        if (thumb != null) {
+            g.drawImage(thumb, r.x + (cellSize - thumb.getWidth()) / 2, r.y + (cellSize - thumb.getHeight()) / 2,
+                    null);
+        } else {
+            g.setColor(CELL);
+            g.fillRect(r.x, r.y, r.width, r.height);
+        }
+        if (isCurrent) {
+            g.setColor(CURRENT);
+            g.drawRect(r.x - 1, r.y - 1, r.width + 1, r.height + 1);
+            g.drawRect(r.x - 2, r.y - 2, r.width + 3, r.height + 3);
+        }
+    }
+
+    // Loads the cells in and just around the view, cancelling loads for everything else
+    private void requestVisible() {
+        Rectangle view = getVisibleRect();
+        int size = source.size();
+        if (view.isEmpty() || size == 0) {
+            loader.retainOnly(Set.of());
+            return;
+        }
+
+        int columns = columns(), step = cellSize + GAP;
+        int from, to;
+        if (grid) {
+            int firstRow = Math.max(0, view.y / step - LOOKAHEAD_ROWS);
+            int lastRow = (view.y + view.height) / step + LOOKAHEAD_ROWS;
+            from = firstRow * columns;
+            to = (int) Math.min(size - 1L, (lastRow + 1L) * columns - 1);
+        } else {
+            int visible = view.width / step + 1;
+            from = Math.max(0, view.x / step - visible * LOOKAHEAD_ROWS);
+            to = Math.min(size - 1, (view.x + view.width) / step + visible * LOOKAHEAD_ROWS);
+        }
+
+        Set<String> wanted = new HashSet<>();
+        for (int i = from; i <= to; i++) {
+            wanted.add(thumbKey(source.key(i)));
+        }
+        loader.retainOnly(wanted);
+
+        for (int i = from; i <= to; i++) {
+            String key = thumbKey(source.key(i));
+            if (thumbnails.contains(key)) continue;
+
+            Supplier<BufferedImage> load = source.loader(i, cellSize);
+            int index = i;
+            loader.request(key, () -> {
+                BufferedImage thumb = load.get();
+                if (thumb != null) {
+                    thumbnails.put(key, thumb);
+                }
+                return thumb;
+            }).thenAccept(thumb -> {
+                if (thumb != null) {
+                    SwingUtilities.invokeLater(() -> repaint(cellBounds(index)));
+                }
+            });
+        }
+    }
+
+    private String thumbKey(String key) {
+        return key + "#thumb" + cellSize;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        int size = source.size(), step = cellSize + GAP;
+        if (!grid) return new Dimension(GAP + size * step, GAP + step);
+        int columns = columns();
+        int rows = (size + columns - 1) / columns;
+        return new Dimension(GAP + columns * step, GAP + Math.max(1, rows) * step);
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return grid ? new Dimension(4 * (cellSize + GAP) + GAP, 3 * (cellSize + GAP) + GAP)
+                : new Dimension(8 * (cellSize + GAP) + GAP, cellSize + 2 * GAP);
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return cellSize + GAP;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        int extent = orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+        return Math.max(cellSize + GAP, extent - (cellSize + GAP));
+    }
+
+    // The grid wraps to the viewport width and scrolls vertically; the filmstrip scrolls sideways
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return grid;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return !grid;
+    }
+}
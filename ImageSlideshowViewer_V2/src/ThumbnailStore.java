@@ -0,0 +1,361 @@
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persistent cache of header dimensions, EXIF summaries, perceptual hashes and small previews.
+ * Entries are keyed by path and only valid while the file's mtime and size match.
+ * Metadata lives in an append-only index (last record per path wins) that is read
+ * once on startup; preview bytes are appended to a pack file named in the index header.
+ * When the index is rewritten, entries for changed or missing files are dropped and
+ * the live previews are copied into a fresh pack.
+ */
+class ThumbnailStore {
+    static final int PREVIEW_SIZE = 320; // Longest preview side in pixels
+
+    private static final int MAGIC = 0x53534935; // "SSI5"
+    private static final long PACK_SLACK = 8L << 20; // Dead preview bytes tolerated before compacting
+
+    /** Cached facts about one file. */
+    static final class Entry {
+        final String path;
+        final long lastModified, size;
+        final int width, height;
+        final String exif; // Encoded ExifReader.Tags, null until first read
+        final boolean hashed;
+        final long hash; // DuplicateIndex.dHash, valid when hashed
+        final int previewSubsampling; // 0 when no preview is stored
+        final long previewOffset;
+        final int previewLength;
+
+        Entry(String path, long lastModified, long size, int width, int height, String exif,
+              boolean hashed, long hash, int previewSubsampling, long previewOffset, int previewLength) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.width = width;
+            this.height = height;
+            this.exif = exif;
+            this.hashed = hashed;
+            this.hash = hash;
+            this.previewSubsampling = previewSubsampling;
+            this.previewOffset = previewOffset;
+            this.previewLength = previewLength;
+        }
+
+        boolean hasPreview() {
+            return previewSubsampling > 0;
+        }
+
+        Entry withPreview(int subsampling, long offset, int length) {
+            return new Entry(path, lastModified, size, width, height, exif, hashed, hash, subsampling, offset, length);
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private int generation; // Numbers the pack file the index points into
+    private DataOutputStream index;
+    private FileChannel pack;
+
+    private ThumbnailStore() {
+    }
+
+    // Opens the store in the given directory; on failure the store caches nothing
+    static ThumbnailStore open(File dir) {
+        ThumbnailStore store = new ThumbnailStore();
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            File indexFile = new File(dir, "index.dat");
+            int records = store.readIndex(indexFile);
+
+            long livePreviewBytes = 0;
+            for (Entry e : store.entries.values()) {
+                if (e.hasPreview()) livePreviewBytes += e.previewLength;
+            }
+            long packLength = packFile(dir, store.generation).length();
+
+            // Rewrite the index once superseded records outnumber live ones, once most of the pack is
+            // dead previews, or if it is unreadable or damaged
+            boolean rewrite = records < 0 || records > 2 * store.entries.size() + 1024
+                    || packLength > 2 * livePreviewBytes + PACK_SLACK || indexFile.length() == 0;
+            if (rewrite) {
+                store.compact(dir, indexFile);
+            }
+            store.index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+            store.pack = new RandomAccessFile(packFile(dir, store.generation), "rw").getChannel();
+        } catch (IOException e) {
+            System.err.println("Thumbnail cache disabled: " + e.getMessage());
+            store.close();
+            store.entries.clear();
+        }
+        return store;
+    }
+
+    private static File packFile(File dir, int generation) {
+        return new File(dir, "previews-" + generation + ".pack");
+    }
+
+    /**
+     * Drops entries whose files changed or are gone, copies the remaining previews into
+     * the next pack and writes a fresh index pointing at it. The index is replaced by a
+     * single rename, so a crash leaves either the old index and pack or the new ones.
+     */
+    private void compact(File dir, File indexFile) throws IOException {
+        entries.values().removeIf(e -> {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(Paths.get(e.path), BasicFileAttributes.class);
+                return attrs.lastModifiedTime().toMillis() != e.lastModified || attrs.size() != e.size;
+            } catch (IOException | InvalidPathException ex) {
+                return true;
+            }
+        });
+
+        File oldPack = packFile(dir, generation);
+        File newPack = packFile(dir, generation + 1);
+        try (FileChannel from = oldPack.exists() ? FileChannel.open(oldPack.toPath()) : null;
+             FileChannel to = FileChannel.open(newPack.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, Entry> m : entries.entrySet()) {
+                Entry e = m.getValue();
+                if (!e.hasPreview()) continue;
+                long offset = to.size();
+                boolean copied = from != null && e.previewOffset + e.previewLength <= from.size()
+                        && copy(from, e.previewOffset, e.previewLength, to);
+                m.setValue(copied ? e.withPreview(e.previewSubsampling, offset, e.previewLength)
+                        : e.withPreview(0, 0, 0));
+            }
+        }
+
+        File tmp = new File(dir, "index.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(generation + 1);
+            for (Entry e : entries.values()) {
+                writeEntry(out, e);
+            }
+        }
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        generation++;
+
+        // Older packs, and the single pack of earlier versions, are no longer referenced
+        File[] stale = dir.listFiles((d, name) -> name.startsWith("previews") && name.endsWith(".pack")
+                && !name.equals(newPack.getName()));
+        if (stale != null) {
+            for (File f : stale) {
+                Files.deleteIfExists(f.toPath());
+            }
+        }
+    }
+
+    private static boolean copy(FileChannel from, long offset, int length, FileChannel to) throws IOException {
+        long done = 0;
+        while (done < length) {
+            long n = from.transferTo(offset + done, length - done, to);
+            if (n <= 0) return false;
+            done += n;
+        }
+        return true;
+    }
+
+    // Loads every record into memory; returns the record count, or -1 for a foreign or damaged file
+    private int readIndex(File indexFile) throws IOException {
+        if (!indexFile.exists()) return 0;
+
+        // Read whole so the end of the last complete record is known exactly
+        byte[] data = Files.readAllBytes(indexFile.toPath());
+        ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+        DataInputStream in = new DataInputStream(bytes);
+        int records = 0;
+        try {
+            if (in.readInt() != MAGIC) return -1;
+            generation = in.readInt();
+            while (bytes.available() > 0) {
+                String path = in.readUTF();
+                long lastModified = in.readLong();
+                long size = in.readLong();
+                int width = in.readInt();
+                int height = in.readInt();
+                String exif = in.readBoolean() ? in.readUTF() : null;
+                boolean hashed = in.readBoolean();
+                long hash = in.readLong();
+                int previewSubsampling = in.readInt();
+                long previewOffset = in.readLong();
+                int previewLength = in.readInt();
+                entries.put(path, new Entry(path, lastModified, size, width, height, exif, hashed, hash,
+                        previewSubsampling, previewOffset, previewLength));
+                records++;
+            }
+        } catch (IOException e) {
+            // A record cut short by a crash. Appending after it would put every later record out of
+            // step, so keep what was read and have the caller rewrite the index.
+            return -1;
+        }
+        return records;
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry e) throws IOException {
+        out.writeUTF(e.path);
+        out.writeLong(e.lastModified);
+        out.writeLong(e.size);
+        out.writeInt(e.width);
+        out.writeInt(e.height);
+        out.writeBoolean(e.exif != null);
+        if (e.exif != null) {
+            out.writeUTF(e.exif);
+        }
+        out.writeBoolean(e.hashed);
+        out.writeLong(e.hash);
+        out.writeInt(e.previewSubsampling);
+        out.writeLong(e.previewOffset);
+        out.writeInt(e.previewLength);
+    }
+
+    // The entry for this file, or null if there is none or the file has changed since
+    synchronized Entry lookup(String path, long lastModified, long size) {
+        Entry e = entries.get(path);
+        return e != null && e.lastModified == lastModified && e.size == size ? e : null;
+    }
+
+    synchronized void putDimensions(String path, long lastModified, long size, int width, int height) {
+        append(new Entry(path, lastModified, size, width, height, null, false, 0, 0, 0, 0));
+    }
+
+    synchronized void putExif(String path, long lastModified, long size, String exif) {
+        Entry e = lookup(path, lastModified, size);
+        if (e == null || exif.equals(e.exif)) return;
+        append(new Entry(path, lastModified, size, e.width, e.height, exif, e.hashed, e.hash,
+                e.previewSubsampling, e.previewOffset, e.previewLength));
+    }
+
+    synchronized void putHash(String path, long lastModified, long size, long hash) {
+        Entry e = lookup(path, lastModified, size);
+        if (e == null || (e.hashed && e.hash == hash)) return;
+        append(new Entry(path, lastModified, size, e.width, e.height, e.exif, true, hash,
+                e.previewSubsampling, e.previewOffset, e.previewLength));
+    }
+
+    /**
+     * Stores a preview derived from a raster decoded at {@code subsampling}.
+     * The preview is reduced by a further power of two so it fits PREVIEW_SIZE.
+     * Rasters too small for a full-size preview are ignored unless they are the whole
+     * image, and a stored preview is only replaced by a finer one.
+     */
+    void putPreview(String path, long lastModified, long size, BufferedImage raster, int subsampling) {
+        int longest = Math.max(raster.getWidth(), raster.getHeight());
+        if (longest < PREVIEW_SIZE && subsampling > 1) return;
+        int factor = 1;
+        while (longest / factor > PREVIEW_SIZE) {
+            factor *= 2;
+        }
+        int previewSubsampling = subsampling * factor;
+
+        synchronized (this) {
+            Entry e = lookup(path, lastModified, size);
+            if (e == null || !finer(e, previewSubsampling) || pack == null) return;
+        }
+
+        BufferedImage preview = downscale(raster, factor);
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ImageIO.write(preview, preview.getColorModel().hasAlpha() ? "png" : "jpg", bytes);
+
+            synchronized (this) {
+                Entry current = lookup(path, lastModified, size);
+                if (current == null || !finer(current, previewSubsampling) || pack == null) return;
+
+                long offset = pack.size();
+                pack.write(ByteBuffer.wrap(bytes.toByteArray()), offset);
+                append(new Entry(path, lastModified, size, current.width, current.height, current.exif,
+                        current.hashed, current.hash, previewSubsampling, offset, bytes.size()));
+            }
+        } catch (IOException ex) {
+            System.err.println("Failed to store preview: " + path);
+        }
+    }
+
+    private static boolean finer(Entry e, int previewSubsampling) {
+        return !e.hasPreview() || previewSubsampling < e.previewSubsampling;
+    }
+
+    // Decoded preview for the entry, or null
+    BufferedImage readPreview(Entry e) {
+        if (!e.hasPreview() || pack == null) return null;
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(e.previewLength);
+            synchronized (this) {
+                while (buffer.hasRemaining()) {
+                    if (pack.read(buffer, e.previewOffset + buffer.position()) < 0) return null;
+                }
+            }
+            return ImageIO.read(new ByteArrayInputStream(buffer.array()));
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private void append(Entry e) {
+        entries.put(e.path, e);
+        if (index == null) return;
+        try {
+            writeEntry(index, e);
+        } catch (IOException ex) {
+            System.err.println("Failed to update thumbnail index: " + ex.getMessage());
+        }
+    }
+
+    synchronized void flush() {
+        if (index == null) return;
+        try {
+            index.flush();
+        } catch (IOException e) {
+            System.err.println("Failed to flush thumbnail index: " + e.getMessage());
+        }
+    }
+
+    synchronized void close() {
+        try {
+            if (index != null) index.close();
+            if (pack != null) pack.close();
+        } catch (IOException e) {
+            // Nothing useful to do on shutdown
+        }
+        index = null;
+        pack = null;
+    }
+
+    private static BufferedImage downscale(BufferedImage raster, int factor) {
+        int w = Math.max(1, (raster.getWidth() + factor - 1) / factor);
+        int h = Math.max(1, (raster.getHeight() + factor - 1) / factor);
+        int type = raster.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage preview = new BufferedImage(w, h, type);
+        Graphics2D g = preview.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(raster, 0, 0, w, h, null);
+        g.dispose();
+        return preview;
+    }
+}
@@ -0,0 +1,94 @@
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Lazily built tile pyramid for deep zoom on very large images.
+ * Level n is the source subsampled by 2^n and cut into fixed-size tiles,
+ * each decoded with a region read the first time it becomes visible.
+ * Decoded tiles share the slide cache, so the budget bounds them too.
+ */
+class TiledImage {
+    static final int TILE_SIZE = 512;
+
+    private final File file;
+    private final String keyPrefix;
+    private final int width, height;
+    private final ImageCache cache;
+    private final Prefetcher loader;
+
+    TiledImage(File file, String keyPrefix, int width, int height, ImageCache cache, Prefetcher loader) {
+        this.file = file;
+        this.keyPrefix = keyPrefix;
+        this.width = width;
+        this.height = height;
+        this.cache = cache;
+        this.loader = loader;
+    }
+
+    /**
+     * Paints the tiles of {@code bounds} (in source pixels) that intersect the clip.
+     * {@code sourceToScreen} maps source pixels to the screen and {@code scale} is its
+     * zoom factor. Tiles that are not decoded yet are requested and
+     * {@code onTileLoaded} runs on the loader thread when each one arrives.
+     */
+    void paint(Graphics2D g, AffineTransform sourceToScreen, Rectangle bounds, double scale,
+               Rectangle clip, Runnable onTileLoaded) {
+        int subsampling = ImageDecoder.subsamplingFor(scale);
+        int span = TILE_SIZE * subsampling; // Source pixels covered by one tile
+
+        // Visible area in source coordinates
+        Rectangle visible;
+        try {
+            visible = sourceToScreen.createInverse().createTransformedShape(clip).getBounds();
+        } catch (NoninvertibleTransformException e) {
+            return;
+        }
+        visible = visible.intersection(bounds).intersection(new Rectangle(0, 0, width, height));
+        if (visible.isEmpty()) return;
+
+        Graphics2D tg = (Graphics2D) g.create();
+        tg.clip(sourceToScreen.createTransformedShape(bounds));
+        for (int ty = visible.y / span; ty * span < visible.y + visible.height; ty++) {
+            for (int tx = visible.x / span; tx * span < visible.x + visible.width; tx++) {
+                Rectangle region = new Rectangle(tx * span, ty * span,
+                        Math.min(span, width - tx * span), Math.min(span, height - ty * span));
+                BufferedImage tile = tile(region, subsampling, tx, ty, onTileLoaded);
+                if (tile == null) continue;
+
+                AffineTransform at = new AffineTransform(sourceToScreen);
+                at.translate(region.x, region.y);
+                at.scale(subsampling, subsampling);
+                tg.drawImage(tile, at, null);
+            }
+        }
+        tg.dispose();
+    }
+
+    private BufferedImage tile(Rectangle region, int subsampling, int tx, int ty, Runnable onTileLoaded) {
+        String key = keyPrefix + "#tile:" + subsampling + ":" + tx + ":" + ty;
+        if (cache.contains(key)) {
+            BufferedImage tile = cache.get(key);
+            if (tile != null) return tile;
+        }
+
+        loader.request(key, () -> {
+            try {
+                BufferedImage tile = ImageDecoder.decodeRegion(file, new Dimension(width, height), region, subsampling);
+                if (tile != null) {
+                    cache.put(key, tile);
+                }
+                return tile;
+            } catch (IOException e) {
+                System.err.println("Failed to decode tile of: " + file.getName() + ": " + e.getMessage());
+                return null;
+            }
+        }).thenRun(onTileLoaded);
+        return null;
+    }
+}
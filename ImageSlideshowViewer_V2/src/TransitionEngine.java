@@ -0,0 +1,165 @@
+import javax.swing.JComponent;
+import javax.swing.Timer;
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Slide transitions driven by one shared animation clock.
+ * Both slides are pre-rendered into panel-sized buffers when a transition starts,
+ * so every frame is just two blits. Progress follows wall-clock time, so a late
+ * tick skips ahead rather than stretching the transition, and late ticks are
+ * counted as dropped frames.
+ */
+class TransitionEngine {
+    static final int TARGET_FPS = Integer.getInteger("slideshow.fps", 60);
+    private static final long FRAME_NANOS = 1_000_000_000L / TARGET_FPS;
+    private static final long DURATION_NANOS = 400_000_000L;
+
+    private final JComponent target;
+    private final Timer clock;
+    private final Deque<BufferedImage> spareBuffers = new ArrayDeque<>();
+
+    private String type;
+    private BufferedImage outgoing, incoming;
+    private long startNanos;
+    private boolean active = false;
+
+    // Frame statistics, cumulative across transitions
+    private long frames, droppedFrames, frameNanosTotal, frameNanosMax;
+    private long lastFrameNanos, transitionFrames;
+    private double lastFps;
+
+    TransitionEngine(JComponent target) {
+        this.target = target;
+        this.clock = new Timer((int) Math.max(1, FRAME_NANOS / 1_000_000), e -> tick());
+        this.clock.setCoalesce(true);
+    }
+
+    // A buffer left over from an earlier transition, or null
+    BufferedImage takeBuffer() {
+        return spareBuffers.poll();
+    }
+
+    void start(String type, BufferedImage outgoing, BufferedImage incoming) {
+        cancel();
+        this.type = type;
+        this.outgoing = outgoing;
+        this.incoming = incoming;
+        this.startNanos = System.nanoTime();
+        this.lastFrameNanos = 0;
+        this.transitionFrames = 0;
+        this.active = true;
+        clock.start();
+        target.repaint();
+    }
+
+    // Swaps the slide being transitioned to, e.g. for a sharper pass of it, without restarting
+    void replaceIncoming(BufferedImage incoming) {
+        if (!active) return;
+        recycle(this.incoming);
+        this.incoming = incoming;
+    }
+
+    // Stops any in-flight transition; the target then paints the current slide directly
+    void cancel() {
+        if (active && transitionFrames > 1) {
+            lastFps = (transitionFrames - 1) * 1e9 / (lastFrameNanos - startNanos);
+        }
+        active = false;
+        clock.stop();
+        recycle(outgoing);
+        recycle(incoming);
+        outgoing = null;
+        incoming = null;
+    }
+
+    boolean isActive() {
+        return active;
+    }
+
+    private void tick() {
+        if (System.nanoTime() - startNanos >= DURATION_NANOS) {
+            cancel();
+        }
+        target.repaint();
+    }
+
+    // Composes the current frame from the two pre-rendered buffers
+    void paint(Graphics2D g, int w, int h) {
+        long now = System.nanoTime();
+        if (lastFrameNanos != 0) {
+            long interval = now - lastFrameNanos;
+            if (interval > FRAME_NANOS * 3 / 2) {
+                droppedFrames += Math.round((double) interval / FRAME_NANOS) - 1;
+            }
+        }
+        lastFrameNanos = now;
+
+        float t = Math.min(1f, (now - startNanos) / (float) DURATION_NANOS);
+        float eased = t * t * (3 - 2 * t);
+
+        switch (type) {
+            case "Slide Left": {
+                int dx = Math.round(eased * w);
+                g.drawImage(outgoing, -dx, 0, null);
+                g.drawImage(incoming, w - dx, 0, null);
+                break;
+            }
+            case "Slide Right": {
+                int dx = Math.round(eased * w);
+                g.drawImage(outgoing, dx, 0, null);
+                g.drawImage(incoming, dx - w, 0, null);
+                break;
+            }
+            case "Wipe": {
+                int edge = Math.round(eased * w);
+                g.drawImage(outgoing, 0, 0, null);
+                g.drawImage(incoming, 0, 0, edge, h, 0, 0, edge, h, null);
+                break;
+            }
+            default: {
+                Composite composite = g.getComposite();
+                g.drawImage(outgoing, 0, 0, null);
+                g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, t));
+                g.drawImage(incoming, 0, 0, null);
+                g.setComposite(composite);
+                break;
+            }
+        }
+
+        long frameNanos = System.nanoTime() - now;
+        frames++;
+        transitionFrames++;
+        frameNanosTotal += frameNanos;
+        frameNanosMax = Math.max(frameNanosMax, frameNanos);
+    }
+
+    private void recycle(BufferedImage buffer) {
+        if (buffer != null && spareBuffers.size() < 3) {
+            spareBuffers.push(buffer);
+        }
+    }
+
+    long getFrames() {
+        return frames;
+    }
+
+    long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    double getLastFps() {
+        return lastFps;
+    }
+
+    String stats() {
+        return String.format("Transitions: %d frames, %d dropped, %.2f ms avg / %.2f ms max compose, "
+                        + "last %.0f fps of %d",
+                frames, droppedFrames, frames == 0 ? 0 : frameNanosTotal / 1e6 / frames,
+                frameNanosMax / 1e6, lastFps, TARGET_FPS);
+    }
+}
@@ -0,0 +1,216 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Downloads images into a disk cache so they can be shown like local files.
+ * Bytes are streamed through a fixed buffer, so memory use does not depend on
+ * the image size. Cached copies are revalidated with If-None-Match and
+ * If-Modified-Since, and an interrupted download resumes with a Range request
+ * when the server sent a validator for it. Downloads stop when the calling
+ * thread is interrupted.
+ */
+class UrlFetcher {
+    interface Progress {
+        // total is -1 while the length is unknown
+        void update(long bytes, long total);
+    }
+
+    private static final int CONNECT_TIMEOUT = Integer.getInteger("slideshow.url.connectTimeout", 10_000);
+    private static final int READ_TIMEOUT = Integer.getInteger("slideshow.url.readTimeout", 30_000);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File dir;
+    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    UrlFetcher(File dir) {
+        this.dir = dir;
+    }
+
+    // Local copy of url, downloaded or revalidated as needed
+    Path fetch(String url, Progress progress) throws IOException {
+        // One download per URL at a time; others wait and then revalidate the fresh copy
+        synchronized (locks.computeIfAbsent(url, u -> new Object())) {
+            Files.createDirectories(dir.toPath());
+            String name = cacheName(url);
+            Path file = dir.toPath().resolve(name);
+            Path part = dir.toPath().resolve(name + ".part");
+            Path metaFile = dir.toPath().resolve(name + ".meta");
+            Path partMetaFile = dir.toPath().resolve(name + ".part.meta");
+
+            // The cached copy and the partial download each keep their own validators
+            Properties meta = readMeta(metaFile, url);
+            boolean cached = meta != null && Files.exists(file);
+            Properties partMeta = cached ? null : readMeta(partMetaFile, url);
+            long partLength = partMeta != null && Files.exists(part) ? Files.size(part) : 0;
+            String validator = partMeta == null ? null
+                    : partMeta.getProperty("etag", partMeta.getProperty("lastModified"));
+
+            HttpURLConnection connection = null;
+            try {
+                URLConnection c = new URL(url).openConnection();
+                c.setConnectTimeout(CONNECT_TIMEOUT);
+                c.setReadTimeout(READ_TIMEOUT);
+                if (c instanceof HttpURLConnection) {
+                    connection = (HttpURLConnection) c;
+                    if (cached) {
+                        if (meta.getProperty("etag") != null) {
+                            c.setRequestProperty("If-None-Match", meta.getProperty("etag"));
+                        }
+                        if (meta.getProperty("lastModified") != null) {
+                            c.setRequestProperty("If-Modified-Since", meta.getProperty("lastModified"));
+                        }
+                    } else if (partLength > 0 && validator != null) {
+                        c.setRequestProperty("Range", "bytes=" + partLength + "-");
+                        c.setRequestProperty("If-Range", validator);
+                    }
+
+                    int code = connection.getResponseCode();
+                    if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached) {
+                        return file;
+                    } else if (code != HttpURLConnection.HTTP_OK && code != HttpURLConnection.HTTP_PARTIAL) {
+                        throw new IOException("HTTP " + code + " for " + url);
+                    }
+                    if (code == HttpURLConnection.HTTP_OK) {
+                        partLength = 0; // Full body: changed since the partial download, or no range support
+                    }
+                } else {
+                    partLength = 0; // file:, jar: and the like are read whole
+                }
+
+                // Record the validators of the partial file first so an interrupted download can resume.
+                // The cached copy keeps its own until the new body is complete.
+                Properties fresh = new Properties();
+                fresh.setProperty("url", url);
+                if (c.getHeaderField("ETag") != null) fresh.setProperty("etag", c.getHeaderField("ETag"));
+                if (c.getHeaderField("Last-Modified") != null) {
+                    fresh.setProperty("lastModified", c.getHeaderField("Last-Modified"));
+                }
+                writeMeta(partMetaFile, fresh);
+
+                long length = c.getContentLengthLong();
+                long total = length < 0 ? -1 : partLength + length;
+                download(c, part, partLength, total, progress);
+                Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.move(partMetaFile, metaFile, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                return file;
+            } catch (IOException e) {
+                // A cancel stops here; timeouts (also InterruptedIOExceptions) fall back like other failures
+                if (!cached || Thread.currentThread().isInterrupted()) throw e;
+                // Offline or server trouble: the last good copy beats nothing
+                System.err.println("Using cached copy of " + url + ": " + e.getMessage());
+                return file;
+            } finally {
+                if (connection != null) connection.disconnect();
+            }
+        }
+    }
+
+    private static void download(URLConnection c, Path part, long offset, long total, Progress progress)
+            throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long bytes = offset;
+        try (InputStream in = c.getInputStream();
+             OutputStream out = Files.newOutputStream(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     offset > 0 ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+            progress.update(bytes, total);
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Download cancelled");
+                }
+                out.write(buffer, 0, n);
+                bytes += n;
+                progress.update(bytes, total);
+            }
+        }
+        if (total >= 0 && bytes != total) {
+            throw new IOException("Connection closed after " + bytes + " of " + total + " bytes");
+        }
+    }
+
+    /**
+     * Image URLs listed in a manifest: one per line, blank lines and lines
+     * starting with # are skipped, relative URLs are resolved against the manifest.
+     */
+    List<String> readManifest(String url) throws IOException {
+        Path file = fetch(url, (bytes, total) -> { });
+        List<String> urls = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    urls.add(new URL(new URL(url), line).toString());
+                }
+            }
+        }
+        return urls;
+    }
+
+    static boolean isManifest(String url) {
+        String path = url.toLowerCase();
+        int query = path.indexOf('?');
+        if (query >= 0) path = path.substring(0, query);
+        return path.endsWith(".txt");
+    }
+
+    // Hash of the URL, so names are unique, plus its last path segment for the status bar
+    private static String cacheName(String url) {
+        String path = url;
+        int end = path.indexOf('?');
+        if (end >= 0) path = path.substring(0, end);
+        String last = path.substring(path.lastIndexOf('/') + 1).replaceAll("[^A-Za-z0-9._-]", "_");
+        if (last.isEmpty()) last = "image";
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                sb.append(String.format("%02x", digest[i]));
+            }
+            return sb + "-" + last;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Stored validators, or null when there are none for this exact URL
+    private static Properties readMeta(Path metaFile, String url) {
+        if (!Files.exists(metaFile)) return null;
+        Properties meta = new Properties();
+        try (Reader reader = new InputStreamReader(Files.newInputStream(metaFile), StandardCharsets.UTF_8)) {
+            meta.load(reader);
+        } catch (IOException e) {
+            return null;
+        }
+        return url.equals(meta.getProperty("url")) ? meta : null;
+    }
+
+    private static void writeMeta(Path metaFile, Properties meta) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(metaFile, StandardCharsets.UTF_8)) {
+            meta.store(writer, null);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Checks that ExifReader reports DateTimeOriginal from the Exif sub-IFD over the
+ * DateTime that cameras also write into IFD0, for both a JPEG and a TIFF file.
+ * Build and run from ImageSlideshowViewer_V2:
+ *
+ *   javac -d out/test src/*.java test/*.java
+ *   java -cp out/test ExifReaderTest
+ */
+public class ExifReaderTest {
+    private static final String MODIFIED = "2024:05:06 07:08:09";
+    private static final String CAPTURED = "2020:01:02 03:04:05";
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("slideshow-exif-test");
+        Path jpeg = dir.resolve("both.jpg");
+        Path tiff = dir.resolve("both.tif");
+        Path plain = dir.resolve("plain.jpg");
+        try {
+            Files.write(jpeg, jpeg(tiff(true)));
+            Files.write(tiff, tiff(true));
+            Files.write(plain, jpeg(tiff(false)));
+
+            ExifReader.Tags tags = ExifReader.read(jpeg);
+            check(CAPTURED.equals(tags.dateTime), "JPEG reports DateTimeOriginal over DateTime");
+            check("Acme".equals(tags.make), "JPEG keeps the make from IFD0");
+
+            tags = ExifReader.read(tiff);
+            check(CAPTURED.equals(tags.dateTime), "TIFF reports DateTimeOriginal over DateTime");
+            check("Acme".equals(tags.make), "TIFF keeps the make from IFD0");
+
+            check(MODIFIED.equals(ExifReader.read(plain).dateTime), "DateTime is used without an Exif sub-IFD");
+            System.out.println("ExifReaderTest: all passed");
+        } finally {
+            Files.deleteIfExists(jpeg);
+            Files.deleteIfExists(tiff);
+            Files.deleteIfExists(plain);
+            Files.delete(dir);
+        }
+    }
+
+    /**
+     * Little-endian TIFF structure: IFD0 with Make, DateTime and, optionally, a pointer
+     * to an Exif sub-IFD holding DateTimeOriginal. Strings follow the directories.
+     */
+    private static byte[] tiff(boolean withExif) {
+        byte[] make = ascii("Acme");
+        byte[] modified = ascii(MODIFIED);
+        byte[] captured = ascii(CAPTURED);
+        int ifd0Entries = withExif ? 3 : 2;
+        int ifd0 = 8;
+        int exifIfd = ifd0 + 2 + ifd0Entries * 12 + 4;
+        int strings = withExif ? exifIfd + 2 + 12 + 4 : exifIfd;
+
+        ByteBuffer b = ByteBuffer.allocate(strings + make.length + modified.length + captured.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        b.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(ifd0);
+
+        b.putShort((short) ifd0Entries);
+        entry(b, 0x010F, 2, make.length, strings);
+        entry(b, 0x0132, 2, modified.length, strings + make.length);
+        if (withExif) entry(b, 0x8769, 4, 1, exifIfd);
+        b.putInt(0);
+
+        if (withExif) {
+            b.putShort((short) 1);
+            entry(b, 0x9003, 2, captured.length, strings + make.length + modified.length);
+            b.putInt(0);
+        }
+        b.put(make).put(modified);
+        if (withExif) b.put(captured);
+        return b.array();
+    }
+
+    // JPEG with the TIFF structure in an APP1 Exif segment and no image data
+    private static byte[] jpeg(byte[] tiff) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE1});
+        int length = 2 + 6 + tiff.length;
+        out.write(length >> 8);
+        out.write(length);
+        out.write("Exif\0\0".getBytes(StandardCharsets.US_ASCII));
+        out.write(tiff);
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xD9});
+        return out.toByteArray();
+    }
+
+    private static void entry(ByteBuffer b, int tag, int type, int count, int value) {
+        b.putShort((short) tag).putShort((short) type).putInt(count).putInt(value);
+    }
+
+    private static byte[] ascii(String s) {
+        return (s + "\0").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+        System.out.println("ok   " + what);
+    }
+}
@@ -0,0 +1,194 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Checks UrlFetcher against an embedded HTTP server: full downloads, 304
+ * revalidation, Range resume after a broken transfer, that a failed refresh
+ * does not leave the cached copy paired with the new validators, and that a
+ * server which never answers falls back to the cached copy.
+ * Build and run from ImageSlideshowViewer_V2:
+ *
+ *   javac -d out/test src/*.java test/*.java
+ *   java -cp out/test UrlFetcherTest
+ */
+public class UrlFetcherTest {
+    // What the server currently serves, and how many bytes of the next response it sends before dropping
+    private static volatile byte[] body;
+    private static volatile String etag;
+    private static volatile int cutAfter = -1;
+    private static volatile boolean hang = false; // Accept requests but never answer them
+    private static final List<String> log = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("slideshow.url.readTimeout", "500"); // Read when UrlFetcher loads
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", UrlFetcherTest::handle);
+        server.start();
+        Path dir = Files.createTempDirectory("slideshow-url-test");
+        try {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+            fullDownloadAndNotModified(new UrlFetcher(dir.toFile()), base + "a.jpg");
+            resumeAfterBrokenTransfer(new UrlFetcher(dir.toFile()), base + "b.jpg");
+            failedRefreshKeepsOldValidators(new UrlFetcher(dir.toFile()), base + "c.jpg");
+            timeoutFallsBackToCachedCopy(new UrlFetcher(dir.toFile()), base + "d.jpg", base + "e.jpg");
+            System.out.println("UrlFetcherTest: all passed");
+        } finally {
+            server.stop(0);
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path p : (Iterable<Path>) files::iterator) Files.delete(p);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    private static void fullDownloadAndNotModified(UrlFetcher fetcher, String url) throws IOException {
+        serve(bytes(10_000, 1), "\"v1\"");
+        Path file = fetcher.fetch(url, (bytes, total) -> { });
+        check(Arrays.equals(Files.readAllBytes(file), body), "200 body saved");
+        check(lastStatus() == 200, "first fetch is a full download");
+
+        Path again = fetcher.fetch(url, (bytes, total) -> { });
+        check(lastStatus() == 304, "second fetch revalidates with If-None-Match");
+        check(again.equals(file) && Arrays.equals(Files.readAllBytes(again), body), "304 keeps the cached copy");
+    }
+
+    private static void resumeAfterBrokenTransfer(UrlFetcher fetcher, String url) throws IOException {
+        serve(bytes(200_000, 2), "\"r1\"");
+        cutAfter = 50_000;
+        try {
+            fetcher.fetch(url, (bytes, total) -> { });
+            check(false, "broken transfer throws");
+        } catch (IOException expected) {
+            // The partial file stays for the next attempt
+        }
+
+        long[] progress = {0, 0};
+        Path file = fetcher.fetch(url, (bytes, total) -> {
+            progress[0] = bytes;
+            progress[1] = total;
+        });
+        check(lastStatus() == 206, "second attempt resumes with a Range request");
+        check(Arrays.equals(Files.readAllBytes(file), body), "resumed body matches");
+        check(progress[0] == body.length && progress[1] == body.length, "progress counts the resumed bytes");
+    }
+
+    private static void failedRefreshKeepsOldValidators(UrlFetcher fetcher, String url) throws IOException {
+        serve(bytes(20_000, 3), "\"old\"");
+        byte[] old = body;
+        fetcher.fetch(url, (bytes, total) -> { });
+
+        // The image changes, and the refresh breaks partway
+        serve(bytes(20_000, 4), "\"new\"");
+        cutAfter = 5_000;
+        Path file = fetcher.fetch(url, (bytes, total) -> { });
+        check(Arrays.equals(Files.readAllBytes(file), old), "broken refresh falls back to the cached copy");
+
+        file = fetcher.fetch(url, (bytes, total) -> { });
+        check(lastStatus() == 200, "next fetch is not answered with 304 for the stale copy");
+        check(Arrays.equals(Files.readAllBytes(file), body), "cached copy is replaced");
+    }
+
+    private static void timeoutFallsBackToCachedCopy(UrlFetcher fetcher, String url, String uncached)
+            throws IOException {
+        serve(bytes(8_000, 5), "\"t1\"");
+        byte[] old = body;
+        fetcher.fetch(url, (bytes, total) -> { });
+
+        hang = true;
+        try {
+            Path file = fetcher.fetch(url, (bytes, total) -> { });
+            check(Arrays.equals(Files.readAllBytes(file), old), "read timeout falls back to the cached copy");
+            try {
+                fetcher.fetch(uncached, (bytes, total) -> { });
+                check(false, "read timeout without a cached copy throws");
+            } catch (IOException expected) {
+                check(!Thread.currentThread().isInterrupted(), "read timeout without a cached copy throws");
+            }
+        } finally {
+            hang = false;
+        }
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        if (hang) {
+            try {
+                Thread.sleep(1_500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+            return;
+        }
+        byte[] content = body;
+        String tag = etag;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        exchange.getResponseHeaders().set("ETag", tag);
+
+        if (tag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            status(304);
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+
+        int from = 0;
+        if (range != null && tag.equals(ifRange)) {
+            from = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+            exchange.getResponseHeaders().set("Content-Range",
+                    "bytes " + from + "-" + (content.length - 1) + "/" + content.length);
+            status(206);
+            exchange.sendResponseHeaders(206, content.length - from);
+        } else {
+            status(200);
+            exchange.sendResponseHeaders(200, content.length);
+        }
+
+        int cut = cutAfter;
+        cutAfter = -1;
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(content, from, cut < 0 ? content.length - from : cut);
+            out.flush();
+        } finally {
+            // Closing short of the declared length drops the connection
+            exchange.close();
+        }
+    }
+
+    private static void serve(byte[] content, String tag) {
+        body = content;
+        etag = tag;
+    }
+
+    private static synchronized void status(int code) {
+        log.add(Integer.toString(code));
+    }
+
+    private static synchronized int lastStatus() {
+        return Integer.parseInt(log.get(log.size() - 1));
+    }
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) b[i] = (byte) (i * 31 + seed);
+        return b;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+        System.out.println("ok   " + what);
+    }
+}